@@ -0,0 +1,115 @@
+package benchmarks;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * BD H2 en memòria que substitueix MariaDB als benchmarks.
+ *
+ * S'ha de cridar init() abans que es carregui cap classe del backend que toqui DBUtils,
+ * perquè DBUtils llegeix -Ddb.url en inicialitzar-se.
+ */
+public final class BenchmarkDatabase {
+    public static final String URL = "jdbc:h2:mem:bench;MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    public static final int USERS = 1000;
+    public static final int ITEMS = 20;
+    public static final int INVENTORY_PER_USER = 50;
+    public static final String PASSWORD = "benchpass";
+
+    private static boolean initialized;
+
+    private BenchmarkDatabase() {}
+
+    public static synchronized void init() {
+        if (initialized) return;
+        if (System.getProperty("db.url") == null) System.setProperty("db.url", URL);
+
+        // Per defecte no volem mesurar el log a consola (hi ha un benchmark específic per això)
+        Logger.getRootLogger().setLevel(Level.toLevel(System.getProperty("bench.logLevel", "WARN")));
+
+        try (Connection conn = DriverManager.getConnection(System.getProperty("db.url"))) {
+            createSchema(conn);
+            seed(conn);
+        } catch (Exception e) {
+            throw new IllegalStateException("No s'ha pogut preparar la BD dels benchmarks", e);
+        }
+        initialized = true;
+    }
+
+    public static String username(int i) {
+        return "bench" + i;
+    }
+
+    private static void createSchema(Connection conn) throws Exception {
+        String sql;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                BenchmarkDatabase.class.getResourceAsStream("/bench-schema.sql"), StandardCharsets.UTF_8))) {
+            sql = in.lines().filter(l -> !l.trim().startsWith("--")).collect(Collectors.joining("\n"));
+        }
+        try (Statement st = conn.createStatement()) {
+            for (String ddl : sql.split(";")) {
+                if (!ddl.trim().isEmpty()) st.execute(ddl);
+            }
+        }
+    }
+
+    private static void seed(Connection conn) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO Item (nombre, descripcion, precio, imagen) VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= ITEMS; i++) {
+                ps.setString(1, "Item" + i);
+                ps.setString(2, "Descripció de l'item " + i);
+                ps.setInt(3, 10 + random.nextInt(200));
+                ps.setString(4, "item" + i + ".png");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO Usuario (username, password, nombre, apellido, email, fechaNacimiento, monedas, mejorPuntuacion) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < USERS; i++) {
+                ps.setString(1, username(i));
+                ps.setString(2, PASSWORD);
+                ps.setString(3, "Nom");
+                ps.setString(4, "Cognom");
+                ps.setString(5, username(i) + "@bench.upc.edu");
+                ps.setString(6, "2000-01-01");
+                ps.setInt(7, Integer.MAX_VALUE / 2); // prou monedes per comprar durant tot el benchmark
+                ps.setInt(8, random.nextInt(100000));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Inventario (usuarioId, itemId) VALUES (?, ?)")) {
+            for (int u = 1; u <= USERS; u++) {
+                for (int k = 0; k < INVENTORY_PER_USER; k++) {
+                    ps.setInt(1, u);
+                    ps.setInt(2, 1 + random.nextInt(ITEMS));
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+}
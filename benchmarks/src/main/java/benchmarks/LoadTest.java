@@ -0,0 +1,132 @@
+package benchmarks;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import server.VirtualThreads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prova de càrrega del servidor sencer (Grizzly + Jersey + pool + H2) amb molts clients concurrents.
+ *
+ * Serveix per comparar el pool de fils de Grizzly amb el mode de fils virtuals: s'executa dues vegades,
+ * amb i sense -Dserver.virtualThreads=true (cal JDK 21+), i es comparen el throughput i els percentils.
+ * Paràmetres: -Dload.clients=200 -Dload.seconds=20 -Dload.warmupSeconds=5 -Dload.path=/v1/shop/inventario/{user}
+ */
+public final class LoadTest {
+    private static final int CLIENTS = Integer.getInteger("load.clients", 200);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSeconds", 5);
+    private static final String PATH = System.getProperty("load.path", "/v1/shop/inventario/{user}");
+    private static final String BASE = "http://localhost:8080";
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkDatabase.init();
+        // Main és al paquet per defecte i no es pot importar
+        HttpServer server = (HttpServer) Class.forName("Main").getMethod("startServer").invoke(null);
+
+        String mode = VirtualThreads.isEnabled() ? "fils virtuals" : "pool de Grizzly";
+        System.out.println("Mode: " + mode + ", clients: " + CLIENTS + ", ruta: " + PATH);
+
+        run(WARMUP_SECONDS);
+        Result r = run(SECONDS);
+
+        System.out.println(String.format("Peticions: %d en %ds -> %.0f req/s", r.count, SECONDS, r.count / (double) SECONDS));
+        System.out.println(String.format("Latència ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+                r.percentile(50), r.percentile(90), r.percentile(99), r.percentile(100)));
+        System.out.println("503: " + r.unavailable.sum() + ", errors: " + r.errors.sum());
+
+        server.shutdownNow();
+        System.exit(0);
+    }
+
+    private static Result run(int seconds) throws InterruptedException {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        Result result = new Result();
+        List<Thread> threads = new ArrayList<>(CLIENTS);
+        List<long[]> latencies = new ArrayList<>(CLIENTS);
+        int[] counts = new int[CLIENTS];
+
+        for (int c = 0; c < CLIENTS; c++) {
+            final int client = c;
+            latencies.add(new long[1024]);
+            Thread t = new Thread(() -> {
+                long[] mine = latencies.get(client);
+                int n = 0;
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    int status = request();
+                    long elapsed = System.nanoTime() - start;
+                    if (status == 503) result.unavailable.increment();
+                    else if (status != 200) result.errors.increment();
+                    if (n == mine.length) {
+                        mine = Arrays.copyOf(mine, n * 2);
+                    }
+                    mine[n++] = elapsed;
+                }
+                latencies.set(client, mine);
+                counts[client] = n;
+            }, "load-client-" + c);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+
+        int total = 0;
+        for (int n : counts) total += n;
+        result.latencies = new long[total];
+        int pos = 0;
+        for (int c = 0; c < CLIENTS; c++) {
+            System.arraycopy(latencies.get(c), 0, result.latencies, pos, counts[c]);
+            pos += counts[c];
+        }
+        Arrays.sort(result.latencies);
+        result.count = total;
+        return result;
+    }
+
+    // Una petició GET; retorna el codi HTTP (o -1 si la connexió ha fallat)
+    private static int request() {
+        String user = BenchmarkDatabase.username(ThreadLocalRandom.current().nextInt(BenchmarkDatabase.USERS));
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(BASE + PATH.replace("{user}", user)).openConnection();
+            int status = conn.getResponseCode();
+            // Llegim el cos sencer perquè la connexió es pugui reutilitzar (keep-alive)
+            try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+                if (in != null) {
+                    byte[] buf = new byte[8192];
+                    while (in.read(buf) != -1) {
+                        // descartem
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            if (conn != null) conn.disconnect();
+            return -1;
+        }
+    }
+
+    private static final class Result {
+        final LongAdder unavailable = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        long[] latencies;
+        int count;
+
+        double percentile(int p) {
+            if (latencies.length == 0) return 0;
+            int i = (int) Math.ceil(p / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(i, latencies.length - 1))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package benchmarks;
+
+import manager.ShopManagerImpl;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import server.RingBufferAppender;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Peticions per ms dels managers amb el log apagat, amb l'appender síncron d'abans (ConsoleAppender amb %L,
+ * aquí a un fitxer perquè no barregi la sortida de JMH) i amb el RingBufferAppender asíncron.
+ * Amb level=DEBUG surten també els missatges dels camins calents (com quan el rootLogger era DEBUG).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final String PATTERN = "%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1} - %m%n";
+    private static final String PATTERN_WITH_LINE = "%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1}:%L - %m%n";
+
+    @Param({"off", "sync", "async"})
+    public String mode;
+
+    @Param({"INFO", "DEBUG"})
+    public String level;
+
+    private ShopManagerImpl shop;
+    private File logFile;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkDatabase.init();
+        shop = ShopManagerImpl.getInstance();
+        shop.warmUp();
+
+        logFile = File.createTempFile("logging-bench", ".log");
+        LogManager.resetConfiguration();
+        Logger root = Logger.getRootLogger();
+        switch (mode) {
+            case "off":
+                root.setLevel(org.apache.log4j.Level.OFF);
+                return;
+            case "sync":
+                root.addAppender(new FileAppender(new PatternLayout(PATTERN_WITH_LINE), logFile.getPath(), false));
+                break;
+            case "async":
+                RingBufferAppender async = new RingBufferAppender();
+                async.setName("bench");
+                async.setLayout(new PatternLayout(PATTERN));
+                async.setFile(logFile.getPath());
+                async.activateOptions();
+                root.addAppender(async);
+                break;
+            default:
+                throw new IllegalArgumentException("mode desconegut: " + mode);
+        }
+        root.setLevel(org.apache.log4j.Level.toLevel(level));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LogManager.shutdown();
+        if (logFile != null) logFile.delete();
+    }
+
+    private static String randomUser() {
+        return BenchmarkDatabase.username(ThreadLocalRandom.current().nextInt(BenchmarkDatabase.USERS));
+    }
+
+    @Benchmark
+    public Object getItemsTienda() {
+        return shop.getItemsTienda();
+    }
+
+    @Benchmark
+    public Object getPerfil() {
+        return shop.getPerfil(randomUser());
+    }
+
+    @Benchmark
+    public int getMonedas() {
+        return shop.getMonedas(randomUser());
+    }
+
+    // Un sol fil: amb H2 les compres concurrents del mateix usuari xoquen pel bloqueig de fila
+    @Benchmark
+    @Threads(1)
+    public String comprarItem() {
+        String username = randomUser();
+        shop.comprarItem(username, 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ITEMS));
+        return username;
+    }
+}
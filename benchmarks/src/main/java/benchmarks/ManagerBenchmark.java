@@ -0,0 +1,94 @@
+package benchmarks;
+
+import db.orm.model.Usuario;
+import manager.AuthManagerImpl;
+import manager.ShopManagerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Fluxos complets dels managers (register, login, compra i inventari) contra la BD H2 en memòria. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ManagerBenchmark {
+
+    private static final AtomicInteger NEXT_USER = new AtomicInteger();
+    private static final int CARRITO = 10;
+
+    private AuthManagerImpl auth;
+    private ShopManagerImpl shop;
+
+    @Setup
+    public void setup() {
+        BenchmarkDatabase.init();
+        auth = AuthManagerImpl.getInstance();
+        shop = ShopManagerImpl.getInstance();
+        shop.warmUp();
+    }
+
+    private static String randomUser() {
+        return BenchmarkDatabase.username(ThreadLocalRandom.current().nextInt(BenchmarkDatabase.USERS));
+    }
+
+    @Benchmark
+    public Usuario register() {
+        int n = NEXT_USER.incrementAndGet();
+        Usuario u = new Usuario(0, "nou" + n, "secret", "Nou", "Usuari", "nou" + n + "@bench.upc.edu", "2000-01-01");
+        auth.register(u);
+        return u;
+    }
+
+    @Benchmark
+    public Usuario login() {
+        Usuario credentials = new Usuario();
+        credentials.setUsername(randomUser());
+        credentials.setPassword(BenchmarkDatabase.PASSWORD);
+        return auth.login(credentials);
+    }
+
+    @Benchmark
+    public String comprarItem() {
+        String username = randomUser();
+        shop.comprarItem(username, 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ITEMS));
+        return username;
+    }
+
+    // 10 items d'una sola vegada (un UPDATE + un batch) vs. els mateixos 10 amb comprarItem
+    @Benchmark
+    public String comprarCarrito() {
+        String username = randomUser();
+        List<Integer> carrito = new ArrayList<>(CARRITO);
+        for (int i = 0; i < CARRITO; i++) carrito.add(1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ITEMS));
+        shop.comprarCarrito(username, carrito);
+        return username;
+    }
+
+    @Benchmark
+    public String comprarCarritoItemAItem() {
+        String username = randomUser();
+        for (int i = 0; i < CARRITO; i++) shop.comprarItem(username, 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ITEMS));
+        return username;
+    }
+
+    @Benchmark
+    public List<?> getItemByUsuario() {
+        return shop.getItemByUsuario(randomUser());
+    }
+}
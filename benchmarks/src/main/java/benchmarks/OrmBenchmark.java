@@ -0,0 +1,120 @@
+package benchmarks;
+
+import db.orm.FactorySession;
+import db.orm.Session;
+import db.orm.model.Inventario;
+import db.orm.model.Item;
+import db.orm.model.Usuario;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Operacions bàsiques de SessionImpl (amb el pool de connexions) sobre la BD H2 en memòria.
+ * Cada operació obre i tanca la seva sessió, com fan els DAOs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrmBenchmark {
+
+    @Setup
+    public void setup() {
+        BenchmarkDatabase.init();
+    }
+
+    @Benchmark
+    public Object get() {
+        Session session = FactorySession.openSession();
+        try {
+            return session.get(Item.class, 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ITEMS));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public List<Object> findAllByUsername() {
+        Session session = FactorySession.openSession();
+        try {
+            HashMap<String, Object> params = new HashMap<>();
+            params.put("username", BenchmarkDatabase.username(ThreadLocalRandom.current().nextInt(BenchmarkDatabase.USERS)));
+            return session.findAll(Usuario.class, params);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public List<Object> findAllItems() {
+        Session session = FactorySession.openSession();
+        try {
+            return session.findAll(Item.class);
+        } finally {
+            session.close();
+        }
+    }
+
+    // Tots els usuaris: llista sencera en memòria vs. consumir-los en streaming
+    @Benchmark
+    public void findAllUsuarios(Blackhole bh) {
+        Session session = FactorySession.openSession();
+        try {
+            for (Object u : session.findAll(Usuario.class)) bh.consume(u);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public void streamAllUsuarios(Blackhole bh) {
+        Session session = FactorySession.openSession();
+        try (Stream<Object> usuarios = session.streamAll(Usuario.class, null)) {
+            usuarios.forEach(bh::consume);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public Inventario save() {
+        Inventario inventario = new Inventario(1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.USERS), 1);
+        Session session = FactorySession.openSession();
+        try {
+            session.save(inventario);
+            return inventario;
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public Usuario update() {
+        Session session = FactorySession.openSession();
+        try {
+            Usuario u = (Usuario) session.get(Usuario.class, 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.USERS));
+            u.setMejorPuntuacion(u.getMejorPuntuacion() + 1);
+            session.update(u);
+            return u;
+        } finally {
+            session.close();
+        }
+    }
+}
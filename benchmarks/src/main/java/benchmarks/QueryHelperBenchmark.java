@@ -0,0 +1,61 @@
+package benchmarks;
+
+import db.orm.model.Inventario;
+import db.orm.model.Usuario;
+import db.orm.util.QueryHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/** Generació de SQL de QueryHelper (sense BD). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryHelperBenchmark {
+
+    private Usuario usuario;
+    private Inventario inventario;
+    private HashMap<String, Object> params;
+
+    @Setup
+    public void setup() {
+        usuario = new Usuario(0, "pepe", "pass", "Pepe", "Garcia", "pepe@upc.edu", "2000-01-01");
+        inventario = new Inventario(1, 2);
+        params = new HashMap<>();
+        params.put("username", "pepe");
+        params.put("email", "pepe@upc.edu");
+    }
+
+    @Benchmark
+    public String insert() {
+        return QueryHelper.createQueryINSERT(inventario);
+    }
+
+    @Benchmark
+    public String selectById() {
+        return QueryHelper.createQuerySELECT(usuario);
+    }
+
+    @Benchmark
+    public String update() {
+        return QueryHelper.updateQueryUPDATE(usuario);
+    }
+
+    @Benchmark
+    public String findAllWithParams() {
+        return QueryHelper.createSelectFindAll(Usuario.class, params);
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import db.orm.model.Usuario;
+import db.orm.util.ObjectHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Accés per reflexió d'ObjectHelper (getFields, getter i setter per nom de columna). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReflectionBenchmark {
+
+    private Usuario usuario;
+
+    @Setup
+    public void setup() {
+        usuario = new Usuario(7, "pepe", "pass", "Pepe", "Garcia", "pepe@upc.edu", "2000-01-01");
+    }
+
+    @Benchmark
+    public String[] getFields() {
+        return ObjectHelper.getFields(usuario);
+    }
+
+    @Benchmark
+    public Object getter() {
+        return ObjectHelper.getter(usuario, "MEJORPUNTUACION");
+    }
+
+    @Benchmark
+    public Usuario setter() {
+        ObjectHelper.setter(usuario, "monedas", 500);
+        return usuario;
+    }
+}
@@ -0,0 +1,123 @@
+package benchmarks;
+
+import db.orm.model.Item;
+import db.orm.model.Usuario;
+import db.orm.util.EntityMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el mapeig fila -> entitat d'abans (getDeclaredFields + equalsIgnoreCase per columna i fila)
+ * amb el d'EntityMetadata (RowMapper precalculat per forma de ResultSet).
+ * El ResultSet és en memòria perquè només mesurem el cost del mapeig, no el de la BD.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowMappingBenchmark {
+
+    @Param({"Usuario", "Item"})
+    public String entity;
+
+    @Param({"100"})
+    public int rows;
+
+    private Class<?> theClass;
+    private ResultSet rs;
+    private int[] cursor;
+
+    @Setup
+    public void setup() {
+        cursor = new int[1];
+        if (entity.equals("Usuario")) {
+            theClass = Usuario.class;
+            rs = inMemoryResultSet(
+                    new String[]{"ID", "username", "password", "nombre", "apellido", "email", "fechaNacimiento", "monedas", "mejorPuntuacion"},
+                    new Object[]{7, "pepito", "secret", "Pepe", "Garcia", "pepe@upc.edu", "2000-01-01", 950, 1234},
+                    rows, cursor);
+        } else {
+            theClass = Item.class;
+            rs = inMemoryResultSet(
+                    new String[]{"ID", "nombre", "descripcion", "precio", "imagen"},
+                    new Object[]{3, "Booster", "Velocitat extra", 150, "booster_basic.png"},
+                    rows, cursor);
+        }
+    }
+
+    @Benchmark
+    public void legacyReflection(Blackhole bh) throws Exception {
+        cursor[0] = 0;
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int numColumns = rsmd.getColumnCount();
+        while (rs.next()) {
+            Object e = theClass.getDeclaredConstructor().newInstance();
+            for (int j = 1; j <= numColumns; j++) {
+                legacySetter(e, rsmd.getColumnName(j), rs.getObject(j));
+            }
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void entityMetadata(Blackhole bh) throws Exception {
+        cursor[0] = 0;
+        EntityMetadata.RowMapper mapper = EntityMetadata.of(theClass).rowMapper(rs.getMetaData());
+        while (rs.next()) {
+            bh.consume(mapper.map(rs));
+        }
+    }
+
+    // Còpia de l'ObjectHelper.setter original
+    private static void legacySetter(Object object, String property, Object value) throws IllegalAccessException {
+        for (Field f : object.getClass().getDeclaredFields()) {
+            if (f.getName().equalsIgnoreCase(property)) {
+                f.setAccessible(true);
+                f.set(object, value);
+                return;
+            }
+        }
+    }
+
+    private static ResultSet inMemoryResultSet(String[] labels, Object[] row, int rows, int[] cursor) {
+        ResultSetMetaData rsmd = (ResultSetMetaData) Proxy.newProxyInstance(
+                RowMappingBenchmark.class.getClassLoader(), new Class[]{ResultSetMetaData.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount": return labels.length;
+                        case "getColumnName":
+                        case "getColumnLabel": return labels[(Integer) args[0] - 1];
+                        default: throw new SQLException("No suportat: " + method.getName());
+                    }
+                });
+        return (ResultSet) Proxy.newProxyInstance(
+                RowMappingBenchmark.class.getClassLoader(), new Class[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next": return ++cursor[0] <= rows;
+                        case "getMetaData": return rsmd;
+                        case "getObject": return row[(Integer) args[0] - 1];
+                        default: throw new SQLException("No suportat: " + method.getName());
+                    }
+                });
+    }
+}
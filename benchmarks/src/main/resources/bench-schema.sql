@@ -0,0 +1,28 @@
+-- Esquema equivalent al de MariaDB per a la BD H2 en memòria dels benchmarks.
+CREATE TABLE Usuario (
+    ID INT AUTO_INCREMENT PRIMARY KEY,
+    username VARCHAR(50) NOT NULL UNIQUE,
+    password VARCHAR(255),
+    nombre VARCHAR(50),
+    apellido VARCHAR(50),
+    email VARCHAR(100) UNIQUE,
+    fechaNacimiento VARCHAR(10),
+    monedas INT DEFAULT 1000,
+    mejorPuntuacion INT DEFAULT 0
+);
+
+CREATE TABLE Item (
+    ID INT AUTO_INCREMENT PRIMARY KEY,
+    nombre VARCHAR(50),
+    descripcion VARCHAR(255),
+    precio INT,
+    imagen VARCHAR(100)
+);
+
+CREATE TABLE Inventario (
+    ID INT AUTO_INCREMENT PRIMARY KEY,
+    usuarioId INT NOT NULL,
+    itemId INT NOT NULL
+);
+
+CREATE INDEX idx_inventario_usuario ON Inventario (usuarioId, itemId);
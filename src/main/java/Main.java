@@ -1,23 +1,38 @@
+import db.ConnectionPool;
+import db.DbExecutor;
+import manager.HashExecutor;
+import manager.ShopManagerImpl;
 import io.swagger.jaxrs.config.BeanConfig;
 import io.swagger.jersey.listing.ApiListingResourceJSON;
 import org.glassfish.grizzly.http.server.HttpServer;
-import org.glassfish.grizzly.http.server.StaticHttpHandler;
+import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import server.ServerConfig;
+import server.StaticAssetHandler;
+import server.VirtualThreads;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main class.
  *
  */
 public class Main {
+    private static final Logger LOGGER = Logger.getLogger(Main.class);
+
     // Base URI the Grizzly HTTP server will listen on
 
 //     public static final String BASE_URI = "http://localhost:8080/v1/";
     // Si per android utilitzes un movil extern per executar el programa: Comenta el de adalt i descomenta el de abaix (crec que funciona amb el 0.0.0.0 per tots els casos)
-    public static final String BASE_URI = "http://0.0.0.0:8080/v1/";
+    // La URI i la resta de paràmetres del servidor es poden canviar a server.properties (server/ServerConfig.java)
+    public static final ServerConfig CONFIG = ServerConfig.load();
+    public static final String BASE_URI = CONFIG.getBaseUri();
 
     /**
      * Starts Grizzly HTTP server exposing JAX-RS resources defined in this application.
@@ -45,28 +60,70 @@ public class Main {
 
         // create and start a new instance of grizzly http server
         // exposing the Jersey application at BASE_URI
-        return GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc);
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc, false);
+
+        // Mode fils virtuals: el pool de treball de Grizzly es substitueix per un fil virtual per petició
+        if (VirtualThreads.isEnabled()) {
+            for (NetworkListener listener : server.getListeners()) {
+                listener.getTransport().setWorkerThreadPool(VirtualThreads.newPerTaskExecutor());
+            }
+            LOGGER.info("Servidor amb fils virtuals (un per petició)");
+        } else if (VirtualThreads.REQUESTED) {
+            LOGGER.warn("S'han demanat fils virtuals però aquest JDK no en té: es fa servir el pool de Grizzly");
+        }
+        CONFIG.apply(server);
+
+        // Carreguem el catàleg de la tenda i el ranking abans d'obrir el port: cap petició ha de trobar-los buits
+        ShopManagerImpl.getInstance().warmUp();
+
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No s'ha pogut arrencar el servidor", e);
+        }
+        return server;
+    }
+
+
+    /**
+     * Atura el servidor deixant acabar les peticions en curs (com a màxim 'graceSeconds')
+     * i després tanca l'executor i el pool de connexions de la BD.
+     */
+    public static void stopServer(HttpServer server, long graceSeconds) {
+        LOGGER.info("Aturant el servidor: esperant les peticions en curs (màx. " + graceSeconds + " s)");
+        try {
+            server.shutdown(graceSeconds, TimeUnit.SECONDS).get(graceSeconds + 5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            LOGGER.warn("Les peticions no han acabat a temps, es tanca el servidor igualment", e);
+            server.shutdownNow();
+        }
+        HashExecutor.getInstance().shutdown(5000); // abans que el DbExecutor: un login pot encara guardar-hi el hash
+        DbExecutor.getInstance().shutdown(5000);
+        ConnectionPool.getInstance().shutdown();
+        LOGGER.info("Servidor aturat");
+        LogManager.shutdown(); // el log és asíncron (server/RingBufferAppender.java): s'escriu el que quedi al buffer
     }
 
 
     /**
      * Main method.
      * @param args
-     * @throws IOException
+     * @throws InterruptedException
      */
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws InterruptedException {
         final HttpServer server = startServer();
 
-        StaticHttpHandler staticHttpHandler = new StaticHttpHandler("public");
-        server.getServerConfiguration().addHttpHandler(staticHttpHandler, "/");
-
+        // Web estàtica amb ETag/304, gzip i sendfile, i les variants d'imatges del build (server/StaticAssetHandler.java)
+        server.getServerConfiguration().addHttpHandler(
+                new StaticAssetHandler("public").withManifest(StaticAssetHandler.MANIFEST), "/");
 
+        // Ctrl+C o SIGTERM (p.ex. docker stop / systemctl stop) --> tancament ordenat
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> stopServer(server, CONFIG.getShutdownGraceSeconds()), "server-shutdown"));
 
         System.out.println(String.format("Jersey app started with WADL available at "
-                + "%sapplication.wadl\nHit enter to stop it...", BASE_URI));
+                + "%sapplication.wadl\nPress Ctrl+C to stop it...", BASE_URI));
 
-        System.in.read();
-        server.stop();
+        Thread.currentThread().join();
     }
 }
-
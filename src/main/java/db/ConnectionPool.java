@@ -0,0 +1,246 @@
+package db;
+
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de connexions JDBC acotat.
+ *
+ * Cada FactorySession.openSession() agafa una connexió d'aquí i SessionImpl.close() la retorna,
+ * de manera que només paguem el handshake TCP + autenticació de MariaDB quan el pool creix.
+ * Els paràmetres es poden canviar amb propietats de sistema (-Ddb.pool.maxSize=20, ...).
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class);
+
+    public static final int MAX_SIZE = Integer.getInteger("db.pool.maxSize", 10);
+    public static final int MIN_IDLE = Integer.getInteger("db.pool.minIdle", 2);
+    public static final long MAX_WAIT_MS = Long.getLong("db.pool.maxWaitMs", 5000L);
+    public static final long IDLE_TIMEOUT_MS = Long.getLong("db.pool.idleTimeoutMs", 10 * 60 * 1000L);
+    public static final long VALIDATION_INTERVAL_MS = Long.getLong("db.pool.validationIntervalMs", 500L);
+    public static final int VALIDATION_TIMEOUT_S = Integer.getInteger("db.pool.validationTimeoutS", 2);
+    public static final long LEAK_THRESHOLD_MS = Long.getLong("db.pool.leakThresholdMs", 30 * 1000L);
+    public static final boolean LEAK_TRACE = Boolean.getBoolean("db.pool.leakTrace");
+    private static final long HOUSEKEEPING_MS = 30 * 1000L;
+
+    // Des que es demana fins que es té la connexió: espera al semàfor + validació o creació
+    private static final Histogram ACQUIRE = MetricsRegistry.getInstance().histogram("db_connection_acquire_seconds",
+            "Temps per obtenir una connexió del pool");
+
+    private static ConnectionPool instance;
+
+    private final Semaphore permits = new Semaphore(MAX_SIZE, true);
+    // LIFO: la connexió que s'acaba de retornar és la més "calenta" i la que menys cal validar
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> inUse = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder destroyedCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private ConnectionPool() {
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeeping, HOUSEKEEPING_MS, HOUSEKEEPING_MS, TimeUnit.MILLISECONDS);
+        registerMetrics();
+        LOGGER.info("Pool de connexions creat (maxSize=" + MAX_SIZE + ", maxWaitMs=" + MAX_WAIT_MS + ")");
+    }
+
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new ConnectionPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Agafa una connexió del pool, esperant com a màxim MAX_WAIT_MS si totes estan ocupades.
+     * @throws SQLTimeoutException si no queda cap connexió lliure dins del temps d'espera.
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) throw new SQLException("El pool de connexions està tancat");
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interromput esperant una connexió", e);
+        }
+        waitNanos.add(System.nanoTime() - start);
+
+        if (!acquired) {
+            timeoutCount.increment();
+            throw new SQLTimeoutException("Cap connexió lliure després de " + MAX_WAIT_MS + " ms (" + this + ")");
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isValid(pc)) break;
+                destroy(pc);
+            }
+            if (pc == null) pc = create();
+
+            pc.markBorrowed(LEAK_TRACE ? new Throwable("Connexió obtinguda aquí") : null);
+            inUse.add(pc);
+            borrowCount.increment();
+            ACQUIRE.recordSince(start);
+            return pc;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Retorna una connexió al pool. Si està trencada o en una transacció a mitges, es neteja o es descarta. */
+    void release(PooledConnection pc) {
+        if (pc == null || !inUse.remove(pc)) return; // ja retornada
+        try {
+            Connection conn = pc.getConnection();
+            if (closed || conn.isClosed()) {
+                destroy(pc);
+            } else {
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+                pc.markReturned();
+                idle.offerFirst(pc);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Connexió descartada en retornar-la al pool", e);
+            destroy(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Tanca totes les connexions lliures i no en deixa agafar de noves. */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) destroy(pc);
+        LOGGER.info("Pool de connexions tancat (" + this + ")");
+    }
+
+    private PooledConnection create() throws SQLException {
+        PooledConnection pc = new PooledConnection(this, DBUtils.getConnection());
+        total.incrementAndGet();
+        createdCount.increment();
+        return pc;
+    }
+
+    private void destroy(PooledConnection pc) {
+        total.decrementAndGet();
+        destroyedCount.increment();
+        try {
+            pc.getConnection().close();
+        } catch (SQLException e) {
+            LOGGER.debug("Error tancant una connexió descartada", e);
+        }
+    }
+
+    // Validem només si la connexió porta una estona aturada: així el camí calent no fa un ping per cada consulta
+    private boolean isValid(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.getLastUsedAt() < VALIDATION_INTERVAL_MS) return true;
+        try {
+            return pc.getConnection().isValid(VALIDATION_TIMEOUT_S);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void housekeeping() {
+        long now = System.currentTimeMillis();
+
+        // 1. Evicció de connexions inactives (les més velles són al final de la cua)
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && total.get() > MIN_IDLE) {
+            PooledConnection pc = it.next();
+            if (now - pc.getLastUsedAt() > IDLE_TIMEOUT_MS && idle.remove(pc)) {
+                destroy(pc);
+            }
+        }
+
+        // 2. Detecció de fuites: connexions que no s'han retornat després de LEAK_THRESHOLD_MS
+        if (LEAK_THRESHOLD_MS > 0) {
+            for (PooledConnection pc : inUse) {
+                if (!pc.isLeakReported() && now - pc.getBorrowedAt() > LEAK_THRESHOLD_MS) {
+                    pc.setLeakReported(true);
+                    LOGGER.warn("Possible fuga de connexió: agafada pel fil '" + pc.getBorrowedBy() + "' fa "
+                            + (now - pc.getBorrowedAt()) + " ms", pc.getBorrowTrace());
+                }
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Estat del pool: " + this);
+    }
+
+    // ==========================
+    // MÈTRIQUES
+    // ==========================
+    public int getMaxSize() { return MAX_SIZE; }
+    public int getTotalConnections() { return total.get(); }
+    public int getActiveConnections() { return inUse.size(); }
+    public int getIdleConnections() { return idle.size(); }
+    public int getPendingThreads() { return permits.getQueueLength(); }
+    public long getBorrowCount() { return borrowCount.sum(); }
+    public long getTimeoutCount() { return timeoutCount.sum(); }
+    public long getCreatedCount() { return createdCount.sum(); }
+    public long getDestroyedCount() { return destroyedCount.sum(); }
+    public long getTotalWaitNanos() { return waitNanos.sum(); }
+
+    private void registerMetrics() {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("db_pool_connections", "Connexions del pool per estat", this::getActiveConnections, "state", "active");
+        registry.gauge("db_pool_connections", "Connexions del pool per estat", this::getIdleConnections, "state", "idle");
+        registry.gauge("db_pool_max_connections", "Mida màxima del pool", this::getMaxSize);
+        registry.gauge("db_pool_pending_threads", "Fils esperant una connexió", this::getPendingThreads);
+        registry.counter("db_pool_timeouts_total", "Peticions de connexió que han esgotat MAX_WAIT_MS", this::getTimeoutCount);
+        registry.counter("db_pool_created_total", "Connexions obertes amb la BD", this::getCreatedCount);
+        registry.counter("db_pool_destroyed_total", "Connexions tancades o descartades", this::getDestroyedCount);
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = getBorrowCount() + getTimeoutCount();
+        return borrows == 0 ? 0 : getTotalWaitNanos() / 1e6 / borrows;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{total=" + getTotalConnections() +
+                ", actives=" + getActiveConnections() +
+                ", lliures=" + getIdleConnections() +
+                ", esperant=" + getPendingThreads() +
+                ", prestecs=" + getBorrowCount() +
+                ", timeouts=" + getTimeoutCount() +
+                ", esperaMitjana=" + String.format("%.3f", getAverageWaitMillis()) + "ms}";
+    }
+}
@@ -11,6 +11,8 @@ public class DBUtils {
     public static final String DB_USER = "root";
     public static final String DB_PASS = "root";
     public static final String DB_PORT = "3306";
+    // Permet apuntar a una altra BD (p.ex. una H2 en memòria als benchmarks) amb -Ddb.url=jdbc:...
+    public static final String DB_URL = System.getProperty("db.url");
 
     public static String getDb() {
         return DB_NAME;
@@ -33,6 +35,10 @@ public class DBUtils {
     }
 
     public static Connection getConnection() throws SQLException {
+        if (DB_URL != null) {
+            return DriverManager.getConnection(DB_URL);
+        }
+
         String db = DBUtils.getDb();
         String host = DBUtils.getDbHost();
         String port = DBUtils.getDbPort();
@@ -40,8 +46,9 @@ public class DBUtils {
         String pass = DBUtils.getDbPasswd();
 
 
+        // useBulkStmts: el driver 3.x envia els executeBatch en un sol paquet (substitueix rewriteBatchedStatements)
         Connection connection = DriverManager.getConnection("jdbc:mariadb://"+host+":"+port+"/"+
-                db+"?user="+user+"&password="+pass);
+                db+"?user="+user+"&password="+pass+"&useServerPrepStmts=true&useBulkStmts=true");
 
         return connection;
     }
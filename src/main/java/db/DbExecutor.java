@@ -0,0 +1,138 @@
+package db;
+
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executor acotat per a la feina que toca la BD (DAOs), separat dels fils HTTP de Grizzly.
+ *
+ * Té tants fils com connexions el pool, així cap fil es queda esperant una connexió, i una cua de mida fixa:
+ * quan la cua és plena la tasca es rebutja de seguida (els recursos responen 503) en lloc d'acumular peticions
+ * que acabarien igualment amb timeout. Mida de la cua amb -Ddb.executor.queueSize.
+ */
+public class DbExecutor {
+    private static final Logger LOGGER = Logger.getLogger(DbExecutor.class);
+
+    public static final int THREADS = Integer.getInteger("db.executor.threads", ConnectionPool.MAX_SIZE);
+    public static final int QUEUE_SIZE = Integer.getInteger("db.executor.queueSize", 100);
+
+    private static final Histogram QUEUE_WAIT = MetricsRegistry.getInstance().histogram("db_executor_queue_seconds",
+            "Temps que una tasca de BD passa a la cua abans d'executar-se");
+
+    private static DbExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder started = new LongAdder();
+
+    private DbExecutor() {
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, QUEUE_SIZE)),
+                r -> {
+                    Thread t = new Thread(r, "db-worker-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        registerMetrics();
+        LOGGER.info("Executor de BD creat (fils=" + THREADS + ", cua=" + QUEUE_SIZE + ")");
+    }
+
+    public static synchronized DbExecutor getInstance() {
+        if (instance == null) {
+            instance = new DbExecutor();
+        }
+        return instance;
+    }
+
+    /**
+     * Executa la tasca en un fil de BD.
+     * @throws RejectedExecutionException si la cua és plena o l'executor està tancat.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                started.increment();
+                long waited = System.nanoTime() - queuedAt;
+                queueNanos.add(waited);
+                QUEUE_WAIT.record(waited);
+                try {
+                    result.complete(task.get());
+                } catch (Throwable t) {
+                    failed.increment();
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        submitted.increment();
+        return result;
+    }
+
+    /** Deixa acabar les tasques en curs (com a màxim 'timeoutMs') i no n'accepta de noves. */
+    public void shutdown(long timeoutMs) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Tasques de BD pendents en tancar: " + executor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Executor de BD tancat (" + this + ")");
+    }
+
+    // ==========================
+    // MÈTRIQUES
+    // ==========================
+    public int getThreads() { return THREADS; }
+    public int getActiveCount() { return executor.getActiveCount(); }
+    public int getQueueSize() { return executor.getQueue().size(); }
+    public int getQueueCapacity() { return QUEUE_SIZE; }
+    public long getSubmittedCount() { return submitted.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    public long getCompletedCount() { return executor.getCompletedTaskCount(); }
+
+    private void registerMetrics() {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("db_executor_active_threads", "Fils de BD executant una tasca", this::getActiveCount);
+        registry.gauge("db_executor_queue_size", "Tasques de BD esperant a la cua", this::getQueueSize);
+        registry.counter("db_executor_rejected_total", "Tasques rebutjades perquè la cua era plena (503)", this::getRejectedCount);
+        registry.counter("db_executor_failed_total", "Tasques de BD acabades amb excepció", this::getFailedCount);
+    }
+
+    public double getAverageQueueMillis() {
+        long n = started.sum();
+        return n == 0 ? 0 : queueNanos.sum() / 1e6 / n;
+    }
+
+    @Override
+    public String toString() {
+        return "DbExecutor{actius=" + getActiveCount() +
+                ", enCua=" + getQueueSize() +
+                ", enviades=" + getSubmittedCount() +
+                ", rebutjades=" + getRejectedCount() +
+                ", errors=" + getFailedCount() +
+                ", cuaMitjana=" + String.format("%.3f", getAverageQueueMillis()) + "ms}";
+    }
+}
@@ -0,0 +1,11 @@
+package db;
+
+/**
+ * No s'ha pogut obtenir cap connexió de la BD: el pool és ple més enllà de -Ddb.pool.maxWaitMs, està tancat
+ * o la BD no respon. Els DAOs la deixen passar i services/AsyncDb.java la converteix en un 503.
+ */
+public class DbUnavailableException extends RuntimeException {
+    public DbUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
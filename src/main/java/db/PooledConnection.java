@@ -0,0 +1,62 @@
+package db;
+
+import java.sql.Connection;
+
+/**
+ * Connexió física gestionada pel {@link ConnectionPool}.
+ * Guarda els temps d'ús necessaris per l'evicció d'inactives i la detecció de fuites.
+ */
+public class PooledConnection {
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final long createdAt;
+    private final StatementCache statements;
+
+    private volatile long lastUsedAt;
+    private volatile long borrowedAt;
+    private volatile String borrowedBy;
+    private volatile Throwable borrowTrace;
+    private volatile boolean leakReported;
+
+    PooledConnection(ConnectionPool pool, Connection connection) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statements = new StatementCache(connection);
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /** Statements preparats d'aquesta connexió; sobreviuen entre sessions. */
+    public StatementCache getStatements() {
+        return statements;
+    }
+
+    /** Retorna la connexió al pool en lloc de tancar-la. */
+    public void release() {
+        pool.release(this);
+    }
+
+    void markBorrowed(Throwable trace) {
+        this.borrowedAt = System.currentTimeMillis();
+        this.borrowedBy = Thread.currentThread().getName();
+        this.borrowTrace = trace;
+        this.leakReported = false;
+    }
+
+    void markReturned() {
+        this.lastUsedAt = System.currentTimeMillis();
+        this.borrowTrace = null;
+    }
+
+    long getCreatedAt() { return createdAt; }
+    long getLastUsedAt() { return lastUsedAt; }
+    long getBorrowedAt() { return borrowedAt; }
+    String getBorrowedBy() { return borrowedBy; }
+    Throwable getBorrowTrace() { return borrowTrace; }
+    boolean isLeakReported() { return leakReported; }
+    void setLeakReported(boolean leakReported) { this.leakReported = leakReported; }
+}
@@ -0,0 +1,82 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU de PreparedStatements d'una connexió.
+ *
+ * Amb el pool les connexions viuen molt temps, així que la mateixa SQL (login, compra, ...) es pot
+ * reutilitzar sense tornar-la a preparar al servidor. Una connexió només la fa servir un fil alhora,
+ * per tant la cache no necessita sincronització.
+ */
+public class StatementCache {
+    public static final int MAX_SIZE = Integer.getInteger("db.statementCacheSize", 64);
+    private static final String GENERATED_KEYS_PREFIX = "#keys ";
+
+    private final Connection conn;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private long hits;
+    private long misses;
+
+    public StatementCache(Connection conn) {
+        this.conn = conn;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= Math.max(1, MAX_SIZE)) return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /** Retorna un statement preparat per la SQL, reutilitzant-lo si ja existeix. No s'ha de tancar. */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, false);
+    }
+
+    /**
+     * Com {@link #prepare(String)}; amb returnGeneratedKeys el statement es prepara amb RETURN_GENERATED_KEYS.
+     * Són statements diferents per la mateixa SQL, així que es guarden amb claus diferents.
+     */
+    public PreparedStatement prepare(String sql, boolean returnGeneratedKeys) throws SQLException {
+        String key = returnGeneratedKeys ? GENERATED_KEYS_PREFIX + sql : sql;
+        PreparedStatement pstm = statements.get(key);
+        if (pstm != null && !pstm.isClosed()) {
+            hits++;
+            pstm.clearParameters();
+            // Per si algú hi havia deixat un addBatch sense executar
+            pstm.clearBatch();
+            return pstm;
+        }
+        misses++;
+        pstm = returnGeneratedKeys
+                ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : conn.prepareStatement(sql);
+        statements.put(key, pstm);
+        return pstm;
+    }
+
+    /** Tanca tots els statements guardats. */
+    public void close() {
+        for (PreparedStatement pstm : statements.values()) closeQuietly(pstm);
+        statements.clear();
+    }
+
+    public int size() { return statements.size(); }
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+
+    private static void closeQuietly(PreparedStatement pstm) {
+        try {
+            pstm.close();
+        } catch (SQLException e) {
+            // el statement ja no es farà servir
+        }
+    }
+}
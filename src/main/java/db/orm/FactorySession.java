@@ -1,17 +1,31 @@
 package db.orm;
 
+import db.ConnectionPool;
 import db.DBUtils;
+import db.DbUnavailableException;
+import db.PooledConnection;
+import org.apache.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class FactorySession {
+    private static final Logger LOGGER = Logger.getLogger(FactorySession.class);
 
+    /**
+     * Sessió amb una connexió del pool; SessionImpl.close() la hi retorna.
+     * @throws DbUnavailableException si el pool no en dona cap (ple, tancat o la BD no respon).
+     */
     public static Session openSession() {
-        Connection conn = getConnection();
-        Session session = new SessionImpl(conn);
-        return session;
+        PooledConnection conn;
+        try {
+            conn = ConnectionPool.getInstance().borrow();
+        } catch (SQLException e) {
+            LOGGER.error("No s'ha pogut obtenir una connexió del pool", e);
+            throw new DbUnavailableException("No s'ha pogut obtenir una connexió de la BD", e);
+        }
+        return new SessionImpl(conn);
     }
 
 
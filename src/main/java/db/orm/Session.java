@@ -1,15 +1,29 @@
 package db.orm;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface Session<E> {
     void save(Object entity);                                           // Crud
+    void saveAll(Collection<?> entities);                               // Crud en batch (una sola anada i tornada)
     void close();
     Object get(Class theClass, Object ID);                                 // cRud
-    void update(Object object);                                         // crUd
+    int update(Object object);                                          // crUd, retorna files afectades (0 si ha fallat)
     //void delete(Object object);                                         // cruD
     List<Object> findAll(Class theClass);                               // cR
     List<Object> findAll(Class theClass, HashMap params);
     List<Object> query(Class theClass, String query, HashMap params);
+    int execute(String sql, Object... params);                          // UPDATE/DELETE directe, retorna files afectades
+
+    // Lectura en streaming: les files es mapegen a mesura que es consumeixen, sense omplir cap llista.
+    // El Stream té el ResultSet obert: s'ha de tancar (try-with-resources) abans de tancar la sessió.
+    Stream<Object> streamAll(Class theClass, HashMap params);
+    Stream<Object> streamQuery(Class theClass, String query, Object... params);
+
+    // Transaccions: totes les operacions entre begin i commit/rollback van per la mateixa connexió
+    void beginTransaction();
+    void commit();
+    void rollback();
 }
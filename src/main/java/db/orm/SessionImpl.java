@@ -1,91 +1,208 @@
 package db.orm;
 
+import db.PooledConnection;
+import db.StatementCache;
+import db.orm.util.EntityMetadata;
 import db.orm.util.ObjectHelper;
 import db.orm.util.QueryHelper;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.apache.log4j.Logger;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SessionImpl implements Session {
+    private static final Logger LOGGER = Logger.getLogger(SessionImpl.class);
+
+    // Files que el driver porta de cop quan es llegeix en streaming (amb 0 el driver ho carregaria tot)
+    public static final int STREAM_FETCH_SIZE = Integer.getInteger("db.streamFetchSize", 500);
+    // Files per executeBatch a saveAll
+    public static final int BATCH_SIZE = Integer.getInteger("db.batchSize", 500);
+
+    // Temps del driver (execute*) separat del de convertir les files en objectes (RowMapper)
+    private static final Histogram SELECT = queryTimer("select");
+    private static final Histogram INSERT = queryTimer("insert");
+    private static final Histogram UPDATE = queryTimer("update");
+    private static final Histogram BATCH = queryTimer("batch");
+    private static final Histogram EXECUTE = queryTimer("execute");
+    private static final Histogram ROW_MAPPING = MetricsRegistry.getInstance().histogram("db_row_mapping_seconds",
+            "Temps de convertir les files d'un ResultSet en objectes");
+    private static final Counter ROWS = MetricsRegistry.getInstance().counter("db_rows_mapped_total",
+            "Files convertides en objectes");
+    // SQL, temps i files de cada sentència; les lentes van al log i a /v1/admin/slow-queries
+    private static final SqlTracer TRACER = SqlTracer.getInstance();
+
     private final Connection conn;
+    private final PooledConnection pooled;
+    // Els statements no es tanquen després de cada operació: es reutilitzen mentre la connexió viu
+    private final StatementCache statements;
+    // Dins d'una transacció els errors es propaguen perquè el DAO pugui fer rollback
+    private boolean inTransaction;
 
     public SessionImpl(Connection conn) {
         this.conn = conn;
+        this.pooled = null;
+        this.statements = conn != null ? new StatementCache(conn) : null;
+    }
+
+    public SessionImpl(PooledConnection pooled) {
+        this.conn = pooled != null ? pooled.getConnection() : null;
+        this.pooled = pooled;
+        this.statements = pooled != null ? pooled.getStatements() : null;
     }
 
     public void save(Object entity) {
         String insertQuery = QueryHelper.createQueryINSERT(entity);
-        PreparedStatement pstm = null;
 
         try {
-            pstm = conn.prepareStatement(insertQuery);
+            PreparedStatement pstm = statements.prepare(insertQuery, true);
             int i = 1;
 
             // Recorrem els camps i omplim els interrogants
-            for (String field : ObjectHelper.getFields(entity)) {
-                // Saltem l'ID perquè ja hem posat un '0' hardcoded a la query
-                if (field.equalsIgnoreCase("ID")) continue;
+            EntityMetadata meta = EntityMetadata.of(entity.getClass());
+            for (EntityMetadata.Property p : meta.getProperties()) {
+                // Saltem l'ID: no és a la query, el genera la BD
+                if (p.isId()) continue;
 
-                pstm.setObject(i++, ObjectHelper.getter(entity, field));
+                pstm.setObject(i++, p.get(entity));
             }
 
             // IMPORTANT: Fem executeUpdate() per a INSERTS, no executeQuery()
-            pstm.executeUpdate();
+            executeUpdate(pstm, INSERT, insertQuery, i - 1);
+
+            // L'ID generat queda a l'entitat: qui crida no ha de tornar a consultar la fila
+            EntityMetadata.Property id = meta.property("ID");
+            if (id != null) {
+                try (ResultSet keys = pstm.getGeneratedKeys()) {
+                    if (keys.next()) id.set(entity, keys.getObject(1));
+                }
+            }
 
         } catch (SQLException e) {
-            e.printStackTrace();
+            handle(e, insertQuery);
         }
     }
 
+    /**
+     * Insereix totes les entitats (de la mateixa classe) amb addBatch/executeBatch, en blocs de BATCH_SIZE.
+     * El driver les envia juntes en lloc de fer una anada i tornada per fila. Si la BD retorna les claus
+     * generades, s'assignen a l'ID de cada entitat en el mateix ordre.
+     */
+    public void saveAll(Collection entities) {
+        if (entities == null || entities.isEmpty()) return;
+        Object firstEntity = entities.iterator().next();
+        String insertQuery = QueryHelper.createQueryINSERT(firstEntity);
+        EntityMetadata meta = EntityMetadata.of(firstEntity.getClass());
+        // Abans del primer addBatch: una excepció a mitges deixaria files pendents al statement de la cache
+        for (Object entity : entities) {
+            if (entity.getClass() != meta.getType()) {
+                throw new IllegalArgumentException("saveAll: totes les entitats han de ser " + meta.getType().getSimpleName());
+            }
+        }
+
+        PreparedStatement pstm = null;
+        try {
+            pstm = statements.prepare(insertQuery, true);
+            List<Object> pending = new ArrayList<>(Math.min(entities.size(), BATCH_SIZE));
+            for (Object entity : entities) {
+                int i = 1;
+                for (EntityMetadata.Property p : meta.getProperties()) {
+                    if (p.isId()) continue;
+                    pstm.setObject(i++, p.get(entity));
+                }
+                pstm.addBatch();
+                pending.add(entity);
+                if (pending.size() == BATCH_SIZE) {
+                    executeBatch(pstm, insertQuery, meta, pending);
+                }
+            }
+            if (!pending.isEmpty()) executeBatch(pstm, insertQuery, meta, pending);
+        } catch (SQLException e) {
+            handle(e, insertQuery);
+        } finally {
+            // El statement és de la connexió del pool: si ha fallat a mitges no hi pot quedar cap fila del batch
+            clearBatchQuietly(pstm);
+        }
+    }
+
+    private static void clearBatchQuietly(PreparedStatement pstm) {
+        if (pstm == null) return;
+        try {
+            pstm.clearBatch();
+        } catch (SQLException e) {
+            LOGGER.warn("Error buidant el batch", e);
+        }
+    }
+
+    private void executeBatch(PreparedStatement pstm, String sql, EntityMetadata meta, List<Object> pending) throws SQLException {
+        long start = System.nanoTime();
+        pstm.executeBatch();
+        long exec = System.nanoTime() - start;
+        BATCH.record(exec);
+        int binds = 0;
+        for (EntityMetadata.Property p : meta.getProperties()) {
+            if (!p.isId()) binds++;
+        }
+        TRACER.record(sql + " [batch x" + pending.size() + "]", binds * pending.size(), pending.size(), exec, 0);
+        EntityMetadata.Property id = meta.property("ID");
+        if (id != null) {
+            try (ResultSet keys = pstm.getGeneratedKeys()) {
+                for (int i = 0; i < pending.size() && keys.next(); i++) {
+                    id.set(pending.get(i), keys.getObject(1));
+                }
+            }
+        }
+        pending.clear();
+    }
+
     public void close() {
+        if (pooled != null) {
+            pooled.release(); // Tornem la connexió al pool en lloc de tancar-la
+            return;
+        }
         try {
+            if (statements != null) statements.close();
             if (conn != null) conn.close();
         } catch (SQLException e) {
-            e.printStackTrace();
+            LOGGER.warn("Error tancant la connexió", e);
         }
     }
 
     @Override
     public Object get(Class theClass, Object ID) {
-        Object entity = null;
-        PreparedStatement pstm = null;
-        ResultSet rs = null;
+        String selectQuery = null;
         try {
-            entity = theClass.getDeclaredConstructor().newInstance();
-            String selectQuery = QueryHelper.createQuerySELECT(entity);
-            pstm = conn.prepareStatement(selectQuery);
+            EntityMetadata meta = EntityMetadata.of(theClass);
+            selectQuery = QueryHelper.createQuerySELECT(meta.newInstance());
+            PreparedStatement pstm = statements.prepare(selectQuery);
             pstm.setObject(1, ID);
-            rs = pstm.executeQuery();
-            if (rs.next()) {
-                ResultSetMetaData rsmd = rs.getMetaData();
-                int numColumns = rsmd.getColumnCount();
-                for (int i = 1; i <= numColumns; i++) {
-                    String columnName = rsmd.getColumnName(i);
-                    Object columnValue = rs.getObject(i);
-                    ObjectHelper.setter(entity, columnName, columnValue);
-                }
-            } else {
-                return null;
-            }
+            List<Object> found = new ArrayList<>(1);
+            select(pstm, selectQuery, 1, theClass, found, 1);
+            return found.isEmpty() ? null : found.get(0);
         } catch (Exception e) {
-            e.printStackTrace();
+            LOGGER.error("Error a get(" + theClass.getSimpleName() + ", " + ID + "): " + selectQuery, e);
             return null;
         }
-        return entity;
     }
 
-    public void update(Object entity) {
+    public int update(Object entity) {
         String updateQuery = QueryHelper.updateQueryUPDATE(entity);
-        PreparedStatement pstm = null;
         try {
-            pstm = conn.prepareStatement(updateQuery);
-            String[] fields = ObjectHelper.getFields(entity);
+            PreparedStatement pstm = statements.prepare(updateQuery);
             int i = 1;
-            for (String field : fields) {
-                if (!field.equalsIgnoreCase("ID")) {
-                    pstm.setObject(i++, ObjectHelper.getter(entity, field));
+            for (EntityMetadata.Property p : EntityMetadata.of(entity.getClass()).getProperties()) {
+                if (!p.isId()) {
+                    pstm.setObject(i++, p.get(entity));
                 }
             }
             // Assumim que l'objecte té un mètode getId() o getID()
@@ -97,39 +214,29 @@ public class SessionImpl implements Session {
             }
 
             pstm.setObject(i, idValue);
-            pstm.executeUpdate();
+            return executeUpdate(pstm, UPDATE, updateQuery, i);
         } catch (SQLException e) {
-            e.printStackTrace();
+            handle(e, updateQuery);
+            return 0;
         }
     }
 
     @Override
     public List<Object> findAll(Class theClass, HashMap params) {
-        String theQuery = QueryHelper.createSelectFindAll(theClass, params);
+        // Lliguem els valors en l'ordre de les claus ordenades, el mateix amb què s'ha generat la SQL
+        String[] keys = QueryHelper.sortedKeys(params);
+        String theQuery = QueryHelper.createSelectFindAll(theClass, keys);
         List<Object> resultList = new ArrayList<>();
-        PreparedStatement pstm = null;
         try {
-            pstm = conn.prepareStatement(theQuery);
+            PreparedStatement pstm = statements.prepare(theQuery);
             int i = 1;
-            if (params != null) {
-                for (Object value : params.values()) {
-                    pstm.setObject(i++, value);
-                }
-            }
-            ResultSet rs = pstm.executeQuery();
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int numColumns = rsmd.getColumnCount();
-            while (rs.next()) {
-                Object entity = theClass.getDeclaredConstructor().newInstance();
-                for (int j = 1; j <= numColumns; j++) {
-                    String columnName = rsmd.getColumnName(j);
-                    Object columnValue = rs.getObject(j);
-                    ObjectHelper.setter(entity, columnName, columnValue);
-                }
-                resultList.add(entity);
+            for (String key : keys) {
+                pstm.setObject(i++, params.get(key));
             }
+            // L'assignació columna -> camp es resol un cop per ResultSet, no per fila
+            select(pstm, theQuery, keys.length, theClass, resultList, Integer.MAX_VALUE);
         } catch (Exception e) {
-            e.printStackTrace();
+            LOGGER.error("Error a findAll(" + theClass.getSimpleName() + "): " + theQuery, e);
         }
         return resultList;
     }
@@ -142,11 +249,10 @@ public class SessionImpl implements Session {
     @Override
     public List<Object> query(Class theClass, String query, HashMap params) {
         List<Object> resultList = new ArrayList<>();
-        PreparedStatement pstm = null;
 
+        // 1. Preparem la SQL que ens arriba (ja construïda pel QueryHelper)
         try {
-            // 1. Preparem la SQL que ens arriba (ja construïda pel QueryHelper)
-            pstm = conn.prepareStatement(query);
+            PreparedStatement pstm = statements.prepare(query);
 
             int i = 1;
             if (params != null) {
@@ -155,27 +261,215 @@ public class SessionImpl implements Session {
                 }
             }
 
-            // 2. Executem
-            ResultSet rs = pstm.executeQuery();
+            // 2. Executem i 3. Mapem (Convertim SQL -> Java Object)
+            select(pstm, query, i - 1, theClass, resultList, Integer.MAX_VALUE);
 
-            // 3. Mapem (Convertim SQL -> Java Object)
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int numColumns = rsmd.getColumnCount();
+        } catch (Exception e) {
+            LOGGER.error("Error a query(" + theClass.getSimpleName() + "): " + query, e);
+        }
+        return resultList;
+    }
 
-            while (rs.next()) {
-                Object entity = theClass.getDeclaredConstructor().newInstance();
-                for (int j = 1; j <= numColumns; j++) {
-                    String columnName = rsmd.getColumnName(j);
-                    Object columnValue = rs.getObject(j);
-                    ObjectHelper.setter(entity, columnName, columnValue);
-                }
-                resultList.add(entity);
+    @Override
+    public int execute(String sql, Object... params) {
+        try {
+            PreparedStatement pstm = statements.prepare(sql);
+            for (int i = 0; i < params.length; i++) {
+                pstm.setObject(i + 1, params[i]);
+            }
+            return executeUpdate(pstm, EXECUTE, sql, params.length);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error executant: " + sql, e);
+        }
+    }
+
+    @Override
+    public Stream<Object> streamAll(Class theClass, HashMap params) {
+        String[] keys = QueryHelper.sortedKeys(params);
+        Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = params.get(keys[i]);
+        }
+        return streamQuery(theClass, QueryHelper.createSelectFindAll(theClass, keys), values);
+    }
+
+    @Override
+    public Stream<Object> streamQuery(Class theClass, String query, Object... params) {
+        // Statement propi i no el de la cache: el ResultSet ha de sobreviure a altres consultes de la sessió
+        PreparedStatement pstm = null;
+        ResultSet rs = null;
+        try {
+            pstm = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstm.setFetchSize(STREAM_FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) {
+                pstm.setObject(i + 1, params[i]);
             }
+            // Quan el Stream es tanqui el DAO ja no serà en curs: es guarda ara d'on ve
+            String origin = TRACER.streamOrigin();
+            long start = System.nanoTime();
+            rs = pstm.executeQuery();
+            long exec = System.nanoTime() - start;
+            SELECT.record(exec);
+            RowSpliterator rows = new RowSpliterator(pstm, rs, EntityMetadata.of(theClass).rowMapper(rs.getMetaData()),
+                    query, params.length, exec, origin);
+            return StreamSupport.stream(rows, false).onClose(rows::close);
+        } catch (SQLException e) {
+            RowSpliterator.closeQuietly(rs, pstm);
+            throw new RuntimeException("Error executant: " + query, e);
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    @Override
+    public void beginTransaction() {
+        try {
+            conn.setAutoCommit(false);
+            inTransaction = true;
+        } catch (SQLException e) {
+            throw new RuntimeException("No s'ha pogut iniciar la transacció", e);
+        }
+    }
+
+    @Override
+    public void commit() {
+        try {
+            conn.commit();
+            conn.setAutoCommit(true);
+            inTransaction = false;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error fent commit de la transacció", e);
         }
-        return resultList;
     }
 
-}
\ No newline at end of file
+    @Override
+    public void rollback() {
+        if (conn == null || !inTransaction) return;
+        try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            LOGGER.error("Error fent rollback de la transacció", e);
+        } finally {
+            inTransaction = false;
+        }
+    }
+
+    private static Histogram queryTimer(String op) {
+        return MetricsRegistry.getInstance().histogram("db_query_seconds",
+                "Temps d'execució de les sentències JDBC, sense llegir les files", "op", op);
+    }
+
+    private static int executeUpdate(PreparedStatement pstm, Histogram timer, String sql, int binds) throws SQLException {
+        long start = System.nanoTime();
+        int rows = pstm.executeUpdate();
+        long exec = System.nanoTime() - start;
+        timer.record(exec);
+        TRACER.record(sql, binds, rows, exec, 0);
+        return rows;
+    }
+
+    // Executa el SELECT i en mapeja com a màxim 'maxRows' files a 'out'. El mapeig només compta el RowMapper
+    // (i la seva preparació), no rs.next(): amb el ResultSet sencer ja llegit per executeQuery, és temps de CPU nostre
+    private static void select(PreparedStatement pstm, String sql, int binds, Class theClass, List<Object> out, int maxRows)
+            throws SQLException {
+        long start = System.nanoTime();
+        try (ResultSet rs = pstm.executeQuery()) {
+            long exec = System.nanoTime() - start;
+            SELECT.record(exec);
+
+            long mapStart = System.nanoTime();
+            EntityMetadata.RowMapper mapper = EntityMetadata.of(theClass).rowMapper(rs.getMetaData());
+            long mapping = System.nanoTime() - mapStart;
+            int rows = 0;
+            while (rows < maxRows && rs.next()) {
+                long t = System.nanoTime();
+                out.add(mapper.map(rs));
+                mapping += System.nanoTime() - t;
+                rows++;
+            }
+            recordMapping(mapping, rows);
+            TRACER.record(sql, binds, rows, exec, mapping);
+        }
+    }
+
+    private static void recordMapping(long nanos, int rows) {
+        ROW_MAPPING.record(nanos);
+        ROWS.add(rows);
+    }
+
+    // Dins d'una transacció l'error es propaga (el DAO fa rollback); fora, queda al log i l'operació no fa res
+    private void handle(SQLException e, String sql) {
+        if (inTransaction) throw new RuntimeException("Error executant: " + sql, e);
+        LOGGER.error("Error executant: " + sql, e);
+    }
+
+    // Recorre el ResultSet fila a fila; quan s'acaba (o falla) allibera el ResultSet i el statement
+    private static final class RowSpliterator extends Spliterators.AbstractSpliterator<Object> {
+        private final PreparedStatement pstm;
+        private final ResultSet rs;
+        private final EntityMetadata.RowMapper mapper;
+        private final String sql;
+        private final int binds;
+        private final String origin;
+        private boolean closed;
+        // En streaming el driver va portant les files a mesura que es llegeixen: rs.next() també és execució
+        private long execNanos;
+        private long mappingNanos;
+        private int rows;
+
+        RowSpliterator(PreparedStatement pstm, ResultSet rs, EntityMetadata.RowMapper mapper,
+                       String sql, int binds, long execNanos, String origin) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.pstm = pstm;
+            this.rs = rs;
+            this.mapper = mapper;
+            this.sql = sql;
+            this.binds = binds;
+            this.execNanos = execNanos;
+            this.origin = origin;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            if (closed) return false;
+            try {
+                long start = System.nanoTime();
+                boolean hasNext = rs.next();
+                long fetched = System.nanoTime();
+                execNanos += fetched - start;
+                if (!hasNext) {
+                    close();
+                    return false;
+                }
+                Object row = mapper.map(rs);
+                mappingNanos += System.nanoTime() - fetched;
+                rows++;
+                action.accept(row);
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new RuntimeException("Error llegint el ResultSet", e);
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            recordMapping(mappingNanos, rows);
+            TRACER.recordStream(sql, binds, rows, execNanos, mappingNanos, origin);
+            closeQuietly(rs, pstm);
+        }
+
+        static void closeQuietly(ResultSet rs, Statement st) {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Error tancant el ResultSet", e);
+            }
+            try {
+                if (st != null) st.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Error tancant el statement", e);
+            }
+        }
+    }
+}
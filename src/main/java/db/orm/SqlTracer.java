@@ -0,0 +1,156 @@
+package db.orm;
+
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import metrics.TimedProxy;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Traça de cada sentència que executa SessionImpl: SQL, nombre de paràmetres, files, temps d'execució al driver
+ * i temps de mapeig a objectes.
+ *
+ * Les que passen de SLOW_QUERY_MS (-Ddb.slowQueryMs, 0 = desactivat) surten al log com a WARN amb el mètode del DAO
+ * que les ha llançat, i les últimes BUFFER_SIZE es guarden en un buffer circular que es pot consultar a
+ * GET /v1/admin/slow-queries (services/AdminService.java). Per veure-les totes:
+ *
+ *   log4j.logger.db.orm.SqlTracer=DEBUG
+ *
+ * L'origen és el mètode del DAO en curs (metrics/TimedProxy.java), que no costa res de saber. Només quan no n'hi ha
+ * es recorre la pila, i només per a les consultes lentes, o a l'obrir un stream amb el DEBUG activat.
+ */
+public final class SqlTracer {
+    private static final Logger LOGGER = Logger.getLogger(SqlTracer.class);
+
+    public static final long SLOW_QUERY_MS = Long.getLong("db.slowQueryMs", 200L);
+    public static final int BUFFER_SIZE = Integer.getInteger("db.slowQueryBuffer", 100);
+    private static final int MAX_SQL_LENGTH = 2000;
+
+    private static SqlTracer instance;
+
+    private final long slowNanos = SLOW_QUERY_MS > 0 ? SLOW_QUERY_MS * 1_000_000L : Long.MAX_VALUE;
+    // Buffer circular sense locks: cada consulta lenta agafa la següent posició i sobreescriu la més antiga
+    private final AtomicReferenceArray<SlowQuery> recent = new AtomicReferenceArray<>(Math.max(1, BUFFER_SIZE));
+    private final AtomicLong next = new AtomicLong();
+    private final Counter slowCount = MetricsRegistry.getInstance().counter("db_slow_queries_total",
+            "Sentències que han trigat més de db.slowQueryMs");
+
+    private SqlTracer() {}
+
+    public static synchronized SqlTracer getInstance() {
+        if (instance == null) {
+            instance = new SqlTracer();
+        }
+        return instance;
+    }
+
+    /**
+     * Origen d'un stream que s'obre ara: quan es tanqui, el DAO ja no serà en curs ni a la pila.
+     * Sense DAO instrumentat només es recorre la pila si la traça està activada (DEBUG); si no, null.
+     */
+    String streamOrigin() {
+        String origin = TimedProxy.currentCall();
+        if (origin == null && LOGGER.isDebugEnabled()) origin = origin(new Throwable().getStackTrace());
+        return origin;
+    }
+
+    /** Sentència ja acabada, en el mateix fil que l'ha llançada. */
+    void record(String sql, int binds, long rows, long execNanos, long mappingNanos) {
+        record(sql, binds, rows, execNanos, mappingNanos, null);
+    }
+
+    /** Stream que es tanca; 'origin' és el de streamOrigin() quan es va obrir. */
+    void recordStream(String sql, int binds, long rows, long execNanos, long mappingNanos, String origin) {
+        record(sql, binds, rows, execNanos, mappingNanos, origin != null ? origin : "?");
+    }
+
+    private void record(String sql, int binds, long rows, long execNanos, long mappingNanos, String origin) {
+        long total = execNanos + mappingNanos;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("%.3f ms (execució %.3f, mapeig %.3f), %d files, %d paràmetres: %s",
+                    total / 1e6, execNanos / 1e6, mappingNanos / 1e6, rows, binds, sql));
+        }
+        if (total < slowNanos) return;
+
+        if (origin == null) origin = TimedProxy.currentCall();
+        if (origin == null) origin = origin(new Throwable().getStackTrace());
+        SlowQuery q = new SlowQuery(System.currentTimeMillis(), truncate(sql), binds, rows,
+                execNanos / 1e6, mappingNanos / 1e6, origin, Thread.currentThread().getName());
+        recent.set((int) (next.getAndIncrement() % recent.length()), q);
+        slowCount.increment();
+        LOGGER.warn(String.format("Consulta lenta: %.1f ms (execució %.1f, mapeig %.1f), %d files, %d paràmetres, des de %s: %s",
+                total / 1e6, q.getExecMs(), q.getMappingMs(), rows, binds, origin, q.getSql()));
+    }
+
+    /** Consultes lentes més recents primer (com a màxim 'limit'). */
+    public List<SlowQuery> getRecent(int limit) {
+        long last = next.get();
+        int n = (int) Math.min(Math.min(last, recent.length()), Math.max(0, limit));
+        List<SlowQuery> result = new ArrayList<>(n);
+        for (long i = last - 1; i >= last - n; i--) {
+            SlowQuery q = recent.get((int) (i % recent.length()));
+            if (q != null) result.add(q);
+        }
+        return result;
+    }
+
+    public long getSlowCount() {
+        return slowCount.get();
+    }
+
+    // Primer mètode d'un DAO a la pila; si no n'hi ha cap, el primer de fora de l'ORM
+    private static String origin(StackTraceElement[] stack) {
+        StackTraceElement fallback = null;
+        for (StackTraceElement e : stack) {
+            String cls = e.getClassName();
+            if (cls.startsWith("db.orm.dao.")) return format(e);
+            if (fallback == null && !cls.startsWith("db.orm.") && !cls.startsWith("java.")) fallback = e;
+        }
+        return fallback != null ? format(fallback) : "?";
+    }
+
+    private static String format(StackTraceElement e) {
+        String cls = e.getClassName();
+        return cls.substring(cls.lastIndexOf('.') + 1) + "." + e.getMethodName() + ":" + e.getLineNumber();
+    }
+
+    private static String truncate(String sql) {
+        return sql.length() <= MAX_SQL_LENGTH ? sql : sql.substring(0, MAX_SQL_LENGTH) + "...";
+    }
+
+    /** Consulta lenta guardada al buffer (AdminService la torna com a services.DTOs.SlowQueryEntry). */
+    public static final class SlowQuery {
+        private final long timestamp;
+        private final String sql;
+        private final int binds;
+        private final long rows;
+        private final double execMs;
+        private final double mappingMs;
+        private final String origin;
+        private final String thread;
+
+        SlowQuery(long timestamp, String sql, int binds, long rows, double execMs, double mappingMs, String origin, String thread) {
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.binds = binds;
+            this.rows = rows;
+            this.execMs = execMs;
+            this.mappingMs = mappingMs;
+            this.origin = origin;
+            this.thread = thread;
+        }
+
+        public long getTimestamp() { return timestamp; }
+        public String getSql() { return sql; }
+        public int getBinds() { return binds; }
+        public long getRows() { return rows; }
+        public double getExecMs() { return execMs; }
+        public double getMappingMs() { return mappingMs; }
+        public String getOrigin() { return origin; }
+        public String getThread() { return thread; }
+    }
+}
@@ -5,5 +5,7 @@ import java.util.List;
 public interface IItemDAO {
     List<Item> getItems();
     public Item getItem(int id);
+    long getCatalogVersion();
+    boolean isCatalogLoaded();
 
 }
\ No newline at end of file
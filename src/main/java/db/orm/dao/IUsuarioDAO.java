@@ -5,6 +5,7 @@ import db.orm.model.Item;
 import db.orm.model.Usuario;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 
 public interface IUsuarioDAO {
@@ -12,10 +13,16 @@ public interface IUsuarioDAO {
     public int addUsuario(Usuario usuario);
     public Usuario getUsuario(int ID);
     public Usuario getUsuarioByEmail(String gmail);
-    public void updateUsuario(Usuario usuario);
+    // true si s'ha guardat. El ranking en memòria (manager/Leaderboard.java) l'actualitza qui crida, si cal
+    public boolean updateUsuario(Usuario usuario);
+    // Només la columna password (no trepitja monedes ni puntuació que s'actualitzin alhora)
+    public void updatePassword(int ID, String passwordHash);
     public void deleteUsuario(int ID);
-    public List<Usuario> getUsuarios();
+    // Pàgina d'usuaris amb ID > afterId; fields = camps a llegir (null = tots menys la contrasenya)
+    public List<Usuario> getUsuarios(int afterId, int limit, String[] fields);
     public List <Usuario> getUsuarioByDept(int ID);
     public Usuario getUsuarioByUsername(String username);
     List<Usuario> getUsuariosRanking();
+    // Mateixes files que getUsuariosRanking en streaming; tancar el Stream tanca la sessió
+    Stream<Usuario> streamUsuariosRanking();
 }
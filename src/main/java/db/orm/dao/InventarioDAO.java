@@ -2,11 +2,16 @@ package db.orm.dao;
 
 import db.orm.model.Inventario;
 import db.orm.model.Item;
+import services.DTOs.ItemInventario;
 
 import java.util.List;
 
 public interface InventarioDAO {
     int addInventario(Inventario inventario);
     List<Inventario> getInventario(int usuarioId);
+    List<ItemInventario> getInventarioAgrupado(int usuarioId);
+    boolean comprarItem(int usuarioId, int itemId, int precio);
+    // Compra de diversos items alhora (carrito): descompta 'total' i insereix totes les files en un batch
+    boolean comprarItems(int usuarioId, List<Integer> itemIds, int total);
 
 }
@@ -6,7 +6,9 @@ import db.orm.SessionImpl;
 import db.orm.model.Inventario;
 import manager.ShopManagerImpl;
 import org.apache.log4j.Logger;
+import services.DTOs.ItemInventario;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -14,6 +16,18 @@ public class InventarioDAOImpl implements InventarioDAO {
     private static InventarioDAOImpl instance;
     private static final Logger LOGGER = Logger.getLogger(ShopManagerImpl.class);
 
+    // Només descompta si hi ha prou monedes: la comprovació i el descompte són atòmics a la BD
+    private static final String DESCONTAR_MONEDAS =
+            "UPDATE Usuario SET monedas = monedas - ? WHERE ID = ? AND monedas >= ?";
+
+    // Inventari ja agrupat per item a la BD: una fila per item amb la quantitat comprada
+    private static final String INVENTARIO_AGRUPADO =
+            "SELECT i.ID AS id, i.nombre AS nombre, i.descripcion AS descripcion, i.precio AS precio, " +
+            "i.imagen AS imagen, COUNT(*) AS cantidad " +
+            "FROM Inventario inv JOIN Item i ON i.ID = inv.itemId " +
+            "WHERE inv.usuarioId = ? " +
+            "GROUP BY i.ID, i.nombre, i.descripcion, i.precio, i.imagen";
+
     private InventarioDAOImpl() {
     }
     public static InventarioDAOImpl getInstance() {
@@ -23,29 +37,25 @@ public class InventarioDAOImpl implements InventarioDAO {
     }
 
     public int addInventario(Inventario inventario) {
-        Session session = null;
+        Session session = FactorySession.openSession();
         try {
-            session = FactorySession.openSession();
             session.save(inventario);
-            LOGGER.info("Inventario guardat correctament");
+            LOGGER.debug("Inventario guardat correctament");
         }
         catch (Exception e) {
             e.printStackTrace();
         }
         finally {
-            if (session != null) {
-                session.close();
-            }
+            session.close();
         }
         return 0;
     }
 
 
     public List<Inventario> getInventario(int usuarioId) {
-        Session session= null;
+        Session session = FactorySession.openSession();
         List<Inventario> listaInventario = null;
         try {
-            session = FactorySession.openSession();
             HashMap<String, Object> params = new HashMap<>();
             params.put("usuarioId", usuarioId);
 
@@ -54,9 +64,86 @@ public class InventarioDAOImpl implements InventarioDAO {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (session != null) session.close();
+            session.close();
         }
 
         return listaInventario;
     }
+
+    // Una sola consulta (JOIN + GROUP BY) independentment de quants items hagi comprat l'usuari
+    public List<ItemInventario> getInventarioAgrupado(int usuarioId) {
+        Session session = FactorySession.openSession();
+        List<ItemInventario> inventario = null;
+        try {
+            HashMap<String, Object> params = new HashMap<>();
+            params.put("usuarioId", usuarioId);
+
+            inventario = (List<ItemInventario>)(List<?>) session.query(ItemInventario.class, INVENTARIO_AGRUPADO, params);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            session.close();
+        }
+
+        return inventario;
+    }
+
+    // Compra en una sola transacció i una sola connexió: si no hi ha prou monedes no es toca res.
+    // Retorna false si l'usuari no té prou monedes.
+    public boolean comprarItem(int usuarioId, int itemId, int precio) {
+        Session session = FactorySession.openSession();
+        try {
+            session.beginTransaction();
+
+            int filas = session.execute(DESCONTAR_MONEDAS, precio, usuarioId, precio);
+            if (filas == 0) {
+                session.rollback();
+                return false;
+            }
+
+            session.save(new Inventario(usuarioId, itemId));
+            session.commit();
+            // Les monedes han canviat directament a la BD: la còpia en cache ja no és vàlida
+            UsuarioCache.getInstance().invalidate(usuarioId);
+            return true;
+        } catch (Exception e) {
+            if (session != null) session.rollback();
+            LOGGER.error("ERROR en la compra del item " + itemId + " per l'usuari " + usuarioId, e);
+            throw new RuntimeException("Error en la base de datos al realizar la compra", e);
+        } finally {
+            session.close();
+        }
+    }
+
+    // Com comprarItem però per un carrito: un sol UPDATE de monedes pel total i un sol batch d'INSERTs.
+    // Retorna false si l'usuari no té prou monedes (i llavors no es compra res).
+    @Override
+    public boolean comprarItems(int usuarioId, List<Integer> itemIds, int total) {
+        Session session = FactorySession.openSession();
+        try {
+            session.beginTransaction();
+
+            int filas = session.execute(DESCONTAR_MONEDAS, total, usuarioId, total);
+            if (filas == 0) {
+                session.rollback();
+                return false;
+            }
+
+            List<Inventario> compras = new ArrayList<>(itemIds.size());
+            for (int itemId : itemIds) {
+                compras.add(new Inventario(usuarioId, itemId));
+            }
+            session.saveAll(compras);
+            session.commit();
+            UsuarioCache.getInstance().invalidate(usuarioId);
+            return true;
+        } catch (Exception e) {
+            if (session != null) session.rollback();
+            LOGGER.error("ERROR en la compra del carrito " + itemIds + " per l'usuari " + usuarioId, e);
+            throw new RuntimeException("Error en la base de datos al realizar la compra", e);
+        } finally {
+            session.close();
+        }
+    }
 }
@@ -1,19 +1,38 @@
 package db.orm.dao;
 
+import db.DbExecutor;
+import db.DbUnavailableException;
 import db.orm.FactorySession;
 import db.orm.Session;
 import db.orm.model.Item;
 import db.orm.model.Usuario;
-import manager.ShopManagerImpl;
+import db.orm.util.IntObjectMap;
 import org.apache.log4j.Logger;
-import org.slf4j.event.LoggingEvent;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ItemDAOImpl implements IItemDAO {
-    private static final Logger LOGGER = Logger.getLogger(ShopManagerImpl.class);
+    private static final Logger LOGGER = Logger.getLogger(ItemDAOImpl.class);
+
+    // El catàleg de la tenda gairebé no canvia: el guardem en memòria i el recarreguem cada CATALOG_TTL_MS.
+    // Un catàleg vençut es continua servint mentre un fil del DbExecutor en llegeix un de nou: cap petició
+    // espera la BD per això, i getCatalogVersion() no la toca mai (es crida des dels fils de Grizzly)
+    public static final long CATALOG_TTL_MS = Long.getLong("catalog.ttlSeconds", 300L) * 1000L;
 
     private static ItemDAOImpl instance;
+
+    private volatile Catalog catalog;
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
     private ItemDAOImpl() {}
 
     public static ItemDAOImpl getInstance() {
@@ -21,8 +40,115 @@ public class ItemDAOImpl implements IItemDAO {
         return instance;
     }
 
+    // Cada consulta compta una sola vegada: hit si es resol amb el catàleg que ja hi havia, miss si ha anat a la BD
     @Override
     public List<Item> getItems() {
+        boolean cached = catalog != null;
+        List<Item> items = catalog().items;
+        (cached ? hits : misses).increment();
+        return items;
+    }
+
+    @Override
+    public Item getItem(int id) {
+        Catalog seen = catalog;
+        Catalog c = catalog();
+        Item item = c.byId.get(id);
+        if (item != null || !c.missReload.compareAndSet(false, true)) {
+            (seen != null ? hits : misses).increment();
+            return item;
+        }
+
+        // No és al catàleg: pot ser un item afegit després de l'última càrrega. Es torna a llegir, però com a molt
+        // un cop per catàleg (és a dir, per TTL): un ID que no existeix no va a la BD a cada petició
+        misses.increment();
+        Catalog fresh = reload(c);
+        fresh.missReload.set(true);
+        return fresh.byId.get(id);
+    }
+
+    /** Carrega el catàleg a l'arrencada perquè la primera petició ja no toqui la BD. */
+    public void warmUp() {
+        invalidate();
+        LOGGER.info("Catàleg de la tenda carregat: " + catalog().items.size() + " items");
+    }
+
+    /** Força que la pròxima consulta torni a llegir el catàleg de la BD. */
+    public synchronized void invalidate() {
+        catalog = null;
+        version.incrementAndGet();
+    }
+
+    public long getCacheHits() { return hits.sum(); }
+    public long getCacheMisses() { return misses.sum(); }
+    /**
+     * Canvia cada vegada que el catàleg s'invalida o es recarrega. Només mira la memòria: si el TTL ha vençut
+     * demana la recàrrega en segon pla i, quan acabi, la versió nova la veurà qui guarda respostes per versió
+     * (services/ResponseCache.java).
+     */
+    @Override
+    public long getCatalogVersion() {
+        Catalog c = catalog;
+        if (c != null && c.isExpired()) refreshInBackground(c);
+        return version.get();
+    }
+
+    /** false si encara no s'ha pogut carregar mai (o s'ha invalidat): la pròxima consulta anirà a la BD. */
+    @Override
+    public boolean isCatalogLoaded() {
+        return catalog != null;
+    }
+
+    private Catalog catalog() {
+        Catalog c = catalog;
+        if (c != null) {
+            hits.increment();
+            if (c.isExpired()) refreshInBackground(c);
+            return c;
+        }
+        return reload(null);
+    }
+
+    private void refreshInBackground(Catalog expired) {
+        if (!refreshing.compareAndSet(false, true)) return;
+        try {
+            DbExecutor.getInstance().submit(() -> {
+                try {
+                    reload(expired);
+                } finally {
+                    refreshing.set(false);
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false); // cua de BD plena: ho tornarà a demanar la pròxima consulta
+        }
+    }
+
+    // Llegeix el catàleg de la BD si el que hi ha és 'stale' (el que ha vist qui crida), si no n'hi ha cap o si ha vençut
+    private synchronized Catalog reload(Catalog stale) {
+        Catalog c = catalog;
+        if (c != null && c != stale && !c.isExpired()) {
+            return c; // un altre fil l'ha recarregat mentre esperàvem
+        }
+        List<Item> items;
+        try {
+            items = getItemsFromDb();
+        } catch (DbUnavailableException e) {
+            if (c == null) throw e; // sense cap catàleg anterior: 503 (services/AsyncDb.java)
+            items = null;
+        }
+        if (items == null) {
+            // Si la BD falla seguim servint l'anterior (o res), però no el guardem com a vàlid
+            return c != null ? c : new Catalog(new ArrayList<>());
+        }
+        c = new Catalog(items);
+        catalog = c;
+        version.incrementAndGet();
+        return c;
+    }
+
+    private List<Item> getItemsFromDb() {
         Session session = FactorySession.openSession();
         List<Item> items = null;
         try {
@@ -34,32 +160,25 @@ public class ItemDAOImpl implements IItemDAO {
         }
         return items;
     }
-    @Override
-    public Item getItem(int id) {
-        Session session = null;
-        Item item = null;
-        try {
-            session = FactorySession.openSession();
 
-            LOGGER.info("--> [DEBUG DAO] Buscant Item amb ID: " + id);
+    // Foto immutable del catàleg: la llista per /shop/items i un índex per ID per getItem
+    private static class Catalog {
+        private final List<Item> items;
+        private final IntObjectMap<Item> byId;
+        private final long loadedAt;
+        // Ja s'ha recarregat una vegada per un ID que no hi era: els següents IDs desconeguts no tornen a la BD
+        private final AtomicBoolean missReload = new AtomicBoolean();
 
-            // Log abans de cridar a l'ORM
-            item = (Item) session.get(Item.class, id);
-
-            if (item == null) {
-                LOGGER.info("--> [DEBUG DAO] ALERTA: session.get() ha retornat NULL.");
-            } else {
-                LOGGER.info("--> [DEBUG DAO] ÈXIT: Item trobat -> " + item.getNombre());
-                LOGGER.info("--> [DEBUG DAO] Dades internes: ID=" + item.getId() + ", Preu=" + item.getPrecio());
-            }
+        Catalog(List<Item> items) {
+            this.items = Collections.unmodifiableList(items);
+            this.byId = new IntObjectMap<>(items.size());
+            for (Item item : items) byId.put(item.getId(), item);
+            this.loadedAt = System.currentTimeMillis();
+        }
 
-        } catch (Exception e) {
-            LOGGER.info("--> [DEBUG DAO] EXCEPCIÓ: Algo ha petat dins de session.get()");
-            e.printStackTrace();
-        } finally {
-            if (session != null) session.close();
+        boolean isExpired() {
+            return System.currentTimeMillis() - loadedAt > CATALOG_TTL_MS;
         }
-        return item;
     }
 
-}
\ No newline at end of file
+}
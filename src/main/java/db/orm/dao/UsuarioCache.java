@@ -0,0 +1,137 @@
+package db.orm.dao;
+
+import db.orm.model.Usuario;
+import db.orm.util.EntityMetadata;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU acotada d'usuaris, indexada per ID, username i email.
+ *
+ * UsuarioDAOImpl la consulta abans d'anar a la BD i la manté al dia en escriure (write-through).
+ * Guarda i retorna còpies, així que els canvis que facin els cridadors sobre l'objecte no la contaminen.
+ */
+public class UsuarioCache {
+    public static final int MAX_SIZE = Integer.getInteger("cache.usuarios.maxSize", 10000);
+
+    private static UsuarioCache instance;
+
+    private final Map<String, Integer> byUsername = new HashMap<>();
+    private final Map<String, Integer> byEmail = new HashMap<>();
+    private final LinkedHashMap<Integer, Usuario> byId = new LinkedHashMap<Integer, Usuario>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Usuario> eldest) {
+            if (size() <= MAX_SIZE) return false;
+            unindex(eldest.getValue());
+            evictions.increment();
+            return true;
+        }
+    };
+
+    // Cada invalidació incrementa l'època: una lectura de BD començada abans no pot tornar a posar dades velles
+    private long epoch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private UsuarioCache() {}
+
+    public static synchronized UsuarioCache getInstance() {
+        if (instance == null) {
+            instance = new UsuarioCache();
+        }
+        return instance;
+    }
+
+    public synchronized Usuario getById(int id) {
+        return found(byId.get(id));
+    }
+
+    public synchronized Usuario getByUsername(String username) {
+        Integer id = username != null ? byUsername.get(username) : null;
+        return found(id != null ? byId.get(id) : null);
+    }
+
+    public synchronized Usuario getByEmail(String email) {
+        Integer id = email != null ? byEmail.get(email) : null;
+        return found(id != null ? byId.get(id) : null);
+    }
+
+    /** Època actual; s'ha de llegir abans de consultar la BD i passar-la a {@link #put(Usuario, long)}. */
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    /** Guarda l'usuari llegit de la BD si no hi ha hagut cap invalidació des de 'readEpoch'. */
+    public synchronized void put(Usuario usuario, long readEpoch) {
+        if (readEpoch == epoch) store(usuario);
+    }
+
+    /**
+     * Write-through: guarda l'estat que s'acaba d'escriure a la BD. També avança l'època, perquè una lectura
+     * començada abans de l'escriptura no pugui substituir aquesta còpia per la fila vella.
+     */
+    public synchronized void put(Usuario usuario) {
+        epoch++;
+        store(usuario);
+    }
+
+    private void store(Usuario usuario) {
+        if (usuario == null || usuario.getId() <= 0) return; // sense ID no el podem indexar
+        Usuario previous = byId.remove(usuario.getId());
+        if (previous != null) unindex(previous);
+
+        Usuario copy = copy(usuario);
+        byId.put(copy.getId(), copy);
+        if (copy.getUsername() != null) byUsername.put(copy.getUsername(), copy.getId());
+        if (copy.getEmail() != null) byEmail.put(copy.getEmail(), copy.getId());
+    }
+
+    /** Treu l'usuari (p.ex. quan les monedes canvien directament a la BD). */
+    public synchronized void invalidate(int id) {
+        epoch++;
+        invalidations.increment();
+        Usuario previous = byId.remove(id);
+        if (previous != null) unindex(previous);
+    }
+
+    public synchronized void clear() {
+        epoch++;
+        byId.clear();
+        byUsername.clear();
+        byEmail.clear();
+    }
+
+    public synchronized int size() { return byId.size(); }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getInvalidations() { return invalidations.sum(); }
+
+    private Usuario found(Usuario cached) {
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(cached);
+    }
+
+    private void unindex(Usuario u) {
+        if (u.getUsername() != null) byUsername.remove(u.getUsername());
+        if (u.getEmail() != null) byEmail.remove(u.getEmail());
+    }
+
+    private static Usuario copy(Usuario u) {
+        Usuario copy = new Usuario();
+        for (EntityMetadata.Property p : EntityMetadata.of(Usuario.class).getProperties()) {
+            p.set(copy, p.get(u));
+        }
+        return copy;
+    }
+}
@@ -3,18 +3,30 @@ package db.orm.dao;
 import db.orm.FactorySession;
 import db.orm.Session;
 import db.orm.model.Usuario;
+import db.orm.util.EntityMetadata;
 import db.orm.util.QueryHelper;
 import org.apache.log4j.Logger;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class UsuarioDAOImpl implements IUsuarioDAO {
 
     private static final Logger LOGGER = Logger.getLogger(UsuarioDAOImpl.class);
+
+    // Per carregar el ranking només calen aquestes columnes (ni contrasenyes ni la resta del perfil)
+    private static final String RANKING_QUERY =
+            "SELECT ID, username, mejorPuntuacion FROM Usuario ORDER BY mejorPuntuacion DESC";
+    private static final String PASSWORD_FIELD = "password";
     private static UsuarioDAOImpl instance;
+    private final UsuarioCache cache;
 
     private UsuarioDAOImpl() {
+        this.cache = UsuarioCache.getInstance();
     }
 
     public static UsuarioDAOImpl getInstance() {
@@ -25,49 +37,54 @@ public class UsuarioDAOImpl implements IUsuarioDAO {
     }
 
     public int addUsuario(Usuario usuario) {
-        Session session = null;
+        Session session = FactorySession.openSession();
         int ID = 0;
         try {
-            session = FactorySession.openSession();
-            LOGGER.info("Iniciando operación para guardar usuario: " + usuario.getUsername());
             session.save(usuario);
-            LOGGER.info("Operación save(usuario) completada con éxito para: " + usuario.getUsername());
-            ID = usuario.getId(); // Asumiendo que el ID se popula después de guardar
+            if (LOGGER.isDebugEnabled()) LOGGER.debug("Usuario guardado: " + usuario.getUsername());
+            ID = usuario.getId(); // session.save() ja hi ha posat l'ID generat per la BD
+            cache.put(usuario);   // el login que ve després del registre ja el troba a la cache
         } catch (Exception e) {
             LOGGER.error("ERROR al guardar el usuario: " + usuario.getUsername(), e);
             // Volvemos a lanzar la excepción para que la capa superior se entere
             throw new RuntimeException("Error en la base de datos al registrar el usuario", e);
         } finally {
-            if (session != null) {
-                session.close();
-                LOGGER.info("Sesión de base de datos cerrada para addUsuario.");
-            }
+            session.close();
         }
         return ID;
     }
 
     public Usuario getUsuario(int ID) {
-        Session session = null;
-        Usuario usuario = null;
+        Usuario usuario = cache.getById(ID);
+        if (usuario != null) return usuario;
+
+        long epoch = cache.epoch();
+        Session session = FactorySession.openSession();
         try {
-            session = FactorySession.openSession();
             usuario = (Usuario) session.get(Usuario.class, ID);
+            cache.put(usuario, epoch);
         } catch (Exception e) {
             LOGGER.error("ERROR al obtener usuario por ID: " + ID, e);
         } finally {
-            if (session != null) session.close();
+            session.close();
         }
         return usuario;
     }
 
     @Override
     public Usuario getUsuarioByEmail(String email) {
+        Usuario cached = cache.getByEmail(email);
+        if (cached != null) return cached;
+
+        long epoch = cache.epoch();
         Session session = FactorySession.openSession();
         try {
             HashMap<String, Object> params = new HashMap<>();
             params.put("email", email);
             List<Object> result = session.findAll(Usuario.class, params);
-            return result.isEmpty() ? null : (Usuario) result.get(0);
+            Usuario usuario = result.isEmpty() ? null : (Usuario) result.get(0);
+            cache.put(usuario, epoch);
+            return usuario;
         } catch (Exception e) {
             LOGGER.error("ERROR al obtener usuario por email: " + email, e);
             return null;
@@ -78,12 +95,18 @@ public class UsuarioDAOImpl implements IUsuarioDAO {
 
     @Override
     public Usuario getUsuarioByUsername(String username) {
+        Usuario cached = cache.getByUsername(username);
+        if (cached != null) return cached;
+
+        long epoch = cache.epoch();
         Session session = FactorySession.openSession();
         try {
             HashMap<String, Object> params = new HashMap<>();
             params.put("username", username);
             List<Object> result = session.findAll(Usuario.class, params);
-            return result.isEmpty() ? null : (Usuario) result.get(0);
+            Usuario usuario = result.isEmpty() ? null : (Usuario) result.get(0);
+            cache.put(usuario, epoch);
+            return usuario;
         } catch (Exception e) {
             LOGGER.error("ERROR al obtener usuario por username: " + username, e);
             return null;
@@ -92,17 +115,37 @@ public class UsuarioDAOImpl implements IUsuarioDAO {
         }
     }
 
-    public void updateUsuario(Usuario usuario) {
-        Session session = null;
+    public boolean updateUsuario(Usuario usuario) {
+        Session session = FactorySession.openSession();
         try {
-            session = FactorySession.openSession();
-            session.update(usuario);
+            // Fora de transacció update() no llança l'error de la BD: si no ha tocat cap fila, la cache no pot
+            // quedar-se amb unes monedes o una puntuació que no s'han guardat
+            if (session.update(usuario) == 0) {
+                cache.invalidate(usuario.getId());
+                LOGGER.error("ERROR al actualizar usuario: " + usuario.getUsername() + " (ninguna fila modificada)");
+                return false;
+            }
+            cache.put(usuario);
+            return true;
         } catch (Exception e) {
+            cache.invalidate(usuario.getId());
             LOGGER.error("ERROR al actualizar usuario: " + usuario.getUsername(), e);
+            return false;
         } finally {
-            if (session != null) {
-                session.close();
-            }
+            session.close();
+        }
+    }
+
+    @Override
+    public void updatePassword(int ID, String passwordHash) {
+        Session session = FactorySession.openSession();
+        try {
+            session.execute("UPDATE Usuario SET password = ? WHERE ID = ?", passwordHash, ID);
+        } catch (Exception e) {
+            LOGGER.error("ERROR al actualizar la contraseña del usuario " + ID, e);
+        } finally {
+            cache.invalidate(ID); // la pròxima lectura porta el hash nou
+            session.close();
         }
     }
 
@@ -111,25 +154,61 @@ public class UsuarioDAOImpl implements IUsuarioDAO {
         Session session = FactorySession.openSession();
         List<Usuario> usersRanking = null;
         try {
-            String sql = QueryHelper.ordenateQuery(Usuario.class, "mejorPuntuacion");
-            usersRanking = session.query(Usuario.class, sql, null);
+            usersRanking = session.query(Usuario.class, RANKING_QUERY, null);
         } catch (Exception e) {
             LOGGER.error("ERROR al obtener el ranking de usuarios", e);
         } finally {
-            if (session != null) {
-                session.close();
-            }
+            session.close();
         }
         return usersRanking;
     }
 
+    @Override
+    public Stream<Usuario> streamUsuariosRanking() {
+        Session session = FactorySession.openSession();
+        try {
+            Stream<Usuario> usuarios = (Stream<Usuario>)(Stream<?>) session.streamQuery(Usuario.class, RANKING_QUERY);
+            return usuarios.onClose(session::close);
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
     public void deleteUsuario(int ID) {
         // Implementación pendiente
     }
 
-    public List<Usuario> getUsuarios() {
-        // Implementación pendiente
-        return null;
+    @Override
+    public List<Usuario> getUsuarios(int afterId, int limit, String[] fields) {
+        String query = QueryHelper.createSelectPage(Usuario.class, listColumns(fields));
+        Session session = FactorySession.openSession();
+        try (Stream<Object> page = session.streamQuery(Usuario.class, query, afterId, limit)) {
+            return (List<Usuario>)(List<?>) page.collect(Collectors.toList());
+        } finally {
+            session.close();
+        }
+    }
+
+    // Columnes de la llista d'usuaris: sempre l'ID (fa de cursor) i mai la contrasenya
+    private static String[] listColumns(String[] fields) {
+        EntityMetadata meta = EntityMetadata.of(Usuario.class);
+        Set<String> columns = new LinkedHashSet<>();
+        columns.add("ID");
+        if (fields == null) {
+            for (String name : meta.getFieldNames()) {
+                if (!name.equalsIgnoreCase(PASSWORD_FIELD)) columns.add(name);
+            }
+        } else {
+            for (String field : fields) {
+                EntityMetadata.Property p = meta.property(field);
+                if (p == null || p.getName().equalsIgnoreCase(PASSWORD_FIELD)) {
+                    throw new IllegalArgumentException("Camp no vàlid: " + field);
+                }
+                columns.add(p.getName());
+            }
+        }
+        return columns.toArray(new String[0]);
     }
 
     public List<Usuario> getUsuarioByDept(int ID) {
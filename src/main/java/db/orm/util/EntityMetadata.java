@@ -0,0 +1,185 @@
+package db.orm.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metadades de reflexió d'una entitat, calculades una sola vegada per classe.
+ *
+ * Abans ObjectHelper feia getDeclaredFields() + equalsIgnoreCase + setAccessible per cada columna de cada fila;
+ * ara els camps es resolen aquí un cop i es guarden com a MethodHandles.
+ */
+public class EntityMetadata {
+    private static final Map<Class<?>, EntityMetadata> REGISTRY = new ConcurrentHashMap<>();
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<?> type;
+    private final MethodHandle constructor;
+    private final Property[] properties;
+    private final String[] fieldNames;
+    private final Map<String, Property> byLowerName;
+    // Un RowMapper per cada "forma" de ResultSet (llista d'etiquetes de columna)
+    private final Map<String, RowMapper> rowMappers = new ConcurrentHashMap<>();
+
+    private EntityMetadata(Class<?> type) {
+        this.type = type;
+        try {
+            Constructor<?> c = type.getDeclaredConstructor();
+            c.setAccessible(true);
+            this.constructor = LOOKUP.unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("La classe " + type.getName() + " necessita un constructor buit", e);
+        }
+
+        List<Property> props = new ArrayList<>();
+        for (Field f : type.getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers()) || f.isSynthetic()) continue;
+            props.add(new Property(f));
+        }
+        this.properties = props.toArray(new Property[0]);
+        this.fieldNames = new String[properties.length];
+        this.byLowerName = new HashMap<>();
+        for (int i = 0; i < properties.length; i++) {
+            fieldNames[i] = properties[i].getName();
+            byLowerName.put(properties[i].getName().toLowerCase(Locale.ROOT), properties[i]);
+        }
+    }
+
+    public static EntityMetadata of(Class<?> type) {
+        return REGISTRY.computeIfAbsent(type, EntityMetadata::new);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public Object newInstance() {
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException("No s'ha pogut instanciar " + type.getName(), t);
+        }
+    }
+
+    /** Camps persistents en ordre de declaració (no s'ha de modificar l'array). */
+    public Property[] getProperties() {
+        return properties;
+    }
+
+    public String[] getFieldNames() {
+        return fieldNames;
+    }
+
+    /** Cerca un camp sense distingir majúscules (com feia ObjectHelper). Retorna null si no existeix. */
+    public Property property(String name) {
+        return name == null ? null : byLowerName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /** Retorna (i guarda) el mapper que associa cada columna del ResultSet amb el seu camp. */
+    public RowMapper rowMapper(ResultSetMetaData rsmd) throws SQLException {
+        int numColumns = rsmd.getColumnCount();
+        String[] labels = new String[numColumns];
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < numColumns; i++) {
+            labels[i] = rsmd.getColumnLabel(i + 1);
+            key.append(labels[i]).append(',');
+        }
+        return rowMappers.computeIfAbsent(key.toString(), k -> new RowMapper(this, labels));
+    }
+
+    /** Accés a un camp via MethodHandles ja resolts. */
+    public static class Property {
+        private final String name;
+        private final Class<?> javaType;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        Property(Field f) {
+            this.name = f.getName();
+            this.javaType = f.getType();
+            f.setAccessible(true); // per si el camp és private, una sola vegada
+            try {
+                this.getter = LOOKUP.unreflectGetter(f).asType(MethodType.methodType(Object.class, Object.class));
+                this.setter = LOOKUP.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Camp inaccessible: " + f, e);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getJavaType() {
+            return javaType;
+        }
+
+        public boolean isId() {
+            return name.equalsIgnoreCase("ID");
+        }
+
+        public Object get(Object target) {
+            try {
+                return getter.invokeExact(target);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Error llegint el camp " + name, t);
+            }
+        }
+
+        public void set(Object target, Object value) {
+            // Un NULL de la BD en un camp primitiu deixa el valor per defecte
+            if (value == null && javaType.isPrimitive()) return;
+            if (value instanceof Number) value = coerce((Number) value);
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable t) {
+                throw new IllegalArgumentException("Error assignant " + value + " al camp " + name, t);
+            }
+        }
+
+        // Els agregats SQL (COUNT, SUM) tornen Long/BigDecimal encara que el camp sigui int
+        private Object coerce(Number n) {
+            if (javaType == int.class || javaType == Integer.class) return n instanceof Integer ? n : n.intValue();
+            if (javaType == long.class || javaType == Long.class) return n instanceof Long ? n : n.longValue();
+            if (javaType == double.class || javaType == Double.class) return n instanceof Double ? n : n.doubleValue();
+            return n;
+        }
+    }
+
+    /** Assignació precalculada columna -> camp per una forma concreta de ResultSet. */
+    public static class RowMapper {
+        private final EntityMetadata metadata;
+        private final Property[] columns;
+
+        RowMapper(EntityMetadata metadata, String[] labels) {
+            this.metadata = metadata;
+            this.columns = new Property[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                columns[i] = metadata.property(labels[i]); // null si la columna no té camp
+            }
+        }
+
+        /** Converteix la fila actual del ResultSet en una nova instància de l'entitat. */
+        public Object map(ResultSet rs) throws SQLException {
+            Object entity = metadata.newInstance();
+            for (int i = 0; i < columns.length; i++) {
+                Property p = columns[i];
+                if (p != null) p.set(entity, rs.getObject(i + 1));
+            }
+            return entity;
+        }
+    }
+}
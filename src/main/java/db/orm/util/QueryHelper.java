@@ -1,77 +1,135 @@
 package db.orm.util;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
-
-import static db.orm.util.ObjectHelper.getFields;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class QueryHelper {
 
+    // SQL ja generada, per (classe, operació, claus dels paràmetres). Les entitats són poques i fixes.
+    private static final Map<String, String> SQL_CACHE = new ConcurrentHashMap<>();
+
     public static String createQueryINSERT(Object entity) {
+        Class theClass = entity.getClass();
+        return SQL_CACHE.computeIfAbsent("INSERT|" + theClass.getName(), k -> buildINSERT(theClass));
+    }
+
+    private static String buildINSERT(Class theClass) {
 
         StringBuffer sb = new StringBuffer("INSERT INTO ");
-        sb.append(entity.getClass().getSimpleName()).append(" ");
+        sb.append(theClass.getSimpleName()).append(" ");
         sb.append("(");
 
-        String [] fields = db.orm.util.ObjectHelper.getFields(entity);
+        String [] fields = EntityMetadata.of(theClass).getFieldNames();
 
-        sb.append("ID");
+        // Sense la columna ID: la genera la BD (AUTO_INCREMENT) i SessionImpl la llegeix amb getGeneratedKeys
+        boolean first = true;
         for (String field: fields) {
-            if (!field.equalsIgnoreCase("ID")) sb.append(", ").append(field);
+            if (field.equalsIgnoreCase("ID")) continue;
+            if (!first) sb.append(", ");
+            sb.append(field);
+            first = false;
         }
-        sb.append(") VALUES (0");
+        sb.append(") VALUES (");
 
+        first = true;
         for (String field: fields) {
-            if (!field.equals("ID"))  sb.append(", ?");
+            if (field.equalsIgnoreCase("ID")) continue;
+            if (!first) sb.append(", ");
+            sb.append("?");
+            first = false;
         }
         sb.append(")");
-        // INSERT INTO User (ID, lastName, firstName, address, city) VALUES (0, ?, ?, ?,?)
+        // INSERT INTO User (lastName, firstName, address, city) VALUES (?, ?, ?, ?)
         return sb.toString();
     }
 
     public static String createQuerySELECT(Object entity) {
-        StringBuffer sb = new StringBuffer();
-        sb.append("SELECT * FROM ").append(entity.getClass().getSimpleName());
-        sb.append(" WHERE ID = ?");
+        Class theClass = entity.getClass();
+        return SQL_CACHE.computeIfAbsent("SELECT|" + theClass.getName(), k -> {
+            StringBuffer sb = new StringBuffer();
+            sb.append("SELECT * FROM ").append(theClass.getSimpleName());
+            sb.append(" WHERE ID = ?");
 
-        return sb.toString();
+            return sb.toString();
+        });
     }
 
 
+    /**
+     * Claus dels paràmetres en ordre alfabètic. La SQL de createSelectFindAll es genera en aquest ordre,
+     * i els valors s'han de lligar en el mateix ordre (no depenem de l'ordre d'iteració del HashMap).
+     */
+    public static String[] sortedKeys(Map params) {
+        if (params == null || params.isEmpty()) return new String[0];
+        String[] keys = new String[params.size()];
+        int i = 0;
+        for (Object key : params.keySet()) keys[i++] = String.valueOf(key);
+        Arrays.sort(keys);
+        return keys;
+    }
+
     public static String createSelectFindAll(Class theClass, HashMap params) {
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT * FROM ").append(theClass.getSimpleName());
-        if (params != null && !params.isEmpty()) {
-            query.append(" WHERE 1=1");
+        return createSelectFindAll(theClass, sortedKeys(params));
+    }
+
+    public static String createSelectFindAll(Class theClass, String[] sortedKeys) {
+        String cacheKey = "FINDALL|" + theClass.getName() + "|" + String.join(",", sortedKeys);
+        return SQL_CACHE.computeIfAbsent(cacheKey, k -> {
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT * FROM ").append(theClass.getSimpleName());
+            if (sortedKeys.length > 0) {
+                query.append(" WHERE 1=1");
 
-            for (Object key : params.keySet()) {
-                query.append(" AND ").append(key).append("=?");
+                for (String key : sortedKeys) {
+                    query.append(" AND ").append(key).append("=?");
+                }
             }
-        }
 
-        return query.toString();
+            return query.toString();
+        });
+    }
+    /**
+     * Pàgina per keyset: només les columnes demanades i les files amb ID més gran que l'últim de la pàgina anterior.
+     * Paràmetres: (últim ID, mida de la pàgina). Amb l'índex de la clau primària cada pàgina costa el mateix.
+     */
+    public static String createSelectPage(Class theClass, String[] columns) {
+        String cacheKey = "PAGE|" + theClass.getName() + "|" + String.join(",", columns);
+        return SQL_CACHE.computeIfAbsent(cacheKey, k -> {
+            StringBuilder query = new StringBuilder("SELECT ");
+            query.append(String.join(", ", columns));
+            query.append(" FROM ").append(theClass.getSimpleName());
+            query.append(" WHERE ID > ? ORDER BY ID LIMIT ?");
+            return query.toString();
+        });
     }
+
     public static String updateQueryUPDATE(Object entity) {
-        StringBuffer sb = new StringBuffer("UPDATE ");
-        sb.append(entity.getClass().getSimpleName()).append(" SET ");
-        String[] fields = db.orm.util.ObjectHelper.getFields(entity);
-        boolean first = true;
-        for (String field : fields) {
-            if (field.equalsIgnoreCase("ID")) continue;
-            if (!first) {
-                sb.append(", ");
+        Class theClass = entity.getClass();
+        return SQL_CACHE.computeIfAbsent("UPDATE|" + theClass.getName(), k -> {
+            StringBuffer sb = new StringBuffer("UPDATE ");
+            sb.append(theClass.getSimpleName()).append(" SET ");
+            String[] fields = EntityMetadata.of(theClass).getFieldNames();
+            boolean first = true;
+            for (String field : fields) {
+                if (field.equalsIgnoreCase("ID")) continue;
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append(field).append("=?");
+                first = false;
             }
-            sb.append(field).append("=?");
-            first = false;
-        }
-        sb.append(" WHERE ID= ?");
-        return sb.toString();
+            sb.append(" WHERE ID= ?");
+            return sb.toString();
+        });
     }
     public static String ordenateQuery(Class theClass, String ordenateByField) {
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT * FROM ").append(theClass.getSimpleName());
-        query.append(" ORDER BY ").append(ordenateByField).append(" DESC");
-        return query.toString();
+        return SQL_CACHE.computeIfAbsent("ORDER|" + theClass.getName() + "|" + ordenateByField, k -> {
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT * FROM ").append(theClass.getSimpleName());
+            query.append(" ORDER BY ").append(ordenateByField).append(" DESC");
+            return query.toString();
+        });
     }
 }
@@ -7,6 +7,13 @@ import java.util.List;
 
 public interface AuthManager {
     void register(Usuario usr);
+    void checkRegistration(Usuario usr);     // part de BD del registre: dades vàlides i sense duplicats
+    void hashPassword(Usuario usr);          // part de CPU del registre (PBKDF2)
+    void saveRegistration(Usuario usr);      // part de BD del registre: inserció
     Usuario login(Usuario usr);
-    List<Usuario> getRegisteredUsers();
+    Usuario findForLogin(Usuario usr);                   // part de BD del login: l'usuari guardat o null
+    Usuario checkPassword(Usuario usr, Usuario stored);  // part de CPU del login (PBKDF2)
+    List<Usuario> getRegisteredUsers(int afterId, int limit, String[] fields);
+    String issueToken(int usuarioId);      // token de sessió signat que es dona al login
+    int verifyToken(String token);         // ID de l'usuari, o -1 si el token no és vàlid
 }
@@ -1,13 +1,16 @@
 package manager;
 
+import db.DbExecutor;
 import db.orm.dao.IUsuarioDAO;
 import db.orm.dao.UsuarioDAOImpl;
 import db.orm.model.Usuario;
+import metrics.TimedProxy;
 import org.apache.log4j.Logger;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Pattern;
 
 public class AuthManagerImpl implements AuthManager {
@@ -19,11 +22,19 @@ public class AuthManagerImpl implements AuthManager {
             Pattern.CASE_INSENSITIVE
     );
 
+    public static final int MAX_USERS_PAGE = 1000;
+
     private static AuthManagerImpl instance;
     private IUsuarioDAO userDAO;
+    private final LoginCache loginCache;
+    private final SessionTokens tokens;
+    private final Leaderboard leaderboard;
 
     private AuthManagerImpl() {
-        this.userDAO = UsuarioDAOImpl.getInstance();
+        this.userDAO = TimedProxy.instrument(IUsuarioDAO.class, UsuarioDAOImpl.getInstance(), "UsuarioDAO");
+        this.loginCache = LoginCache.getInstance();
+        this.tokens = SessionTokens.getInstance();
+        this.leaderboard = Leaderboard.getInstance();
     }
 
     public static AuthManagerImpl getInstance() {
@@ -50,6 +61,10 @@ public class AuthManagerImpl implements AuthManager {
             throw new RuntimeException("El formato del email no es válido.");
         }
 
+        if (usr.getPassword() == null || usr.getPassword().isEmpty()) {
+            throw new RuntimeException("La contraseña es obligatoria.");
+        }
+
         // 2. Validar resto de campos
         String regexUsername = "^[a-zA-Z0-9]+$";
         String regexNombre = "^[a-zA-ZáéíóúÁÉÍÓÚñÑ\\s]+$";
@@ -91,12 +106,21 @@ public class AuthManagerImpl implements AuthManager {
 
     // endpoint REGISTER --> backend(services/AuthManagerService.java): @POST, @Path("/register")
     //                   --> android(AuthService): @POST("/v1/auth/register")
+    // El recurs en fa les tres parts en executors diferents: checkRegistration i saveRegistration al DbExecutor
+    // i hashPassword al HashExecutor (manager/HashExecutor.java), com el login
     @Override
     public void register(Usuario usuario) {
+        checkRegistration(usuario);
+        hashPassword(usuario);
+        saveRegistration(usuario);
+    }
+
+    @Override
+    public void checkRegistration(Usuario usuario) {
 
         validateRegistrationData(usuario);
 
-        LOGGER.info("Usuario validado correctamente: " + usuario.getUsername());
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Usuario validado correctamente: " + usuario.getUsername());
 
         // Comprobar si el email ya existe
         Usuario existentByEmail = userDAO.getUsuarioByEmail(usuario.getEmail());
@@ -111,42 +135,108 @@ public class AuthManagerImpl implements AuthManager {
             LOGGER.error("Intento de registro fallido: El nombre de usuario ya existe: " + usuario.getUsername());
             throw new RuntimeException("El nombre de usuario ya existe. Por favor, elige otro.");
         }
+    }
+
+    @Override
+    public void hashPassword(Usuario usuario) {
+        usuario.setPassword(PasswordHasher.hash(usuario.getPassword())); // a la BD només hi va el hash (manager/PasswordHasher.java)
+    }
 
+    @Override
+    public void saveRegistration(Usuario usuario) {
         // Si todo es correcto, proceder con el registro
-        LOGGER.info("Inicio de registro para el nuevo usuario: " + usuario.getUsername());
         usuario.setId(0); // Para autoincrement en la base de datos
-        userDAO.addUsuario(usuario);
+        userDAO.addUsuario(usuario); // addUsuario deixa a 'usuario' l'ID generat (la resposta del registre ja el porta)
+        leaderboard.update(usuario.getUsername(), usuario.getMejorPuntuacion());
+        usuario.setPassword(null);   // el hash no surt a la resposta
         LOGGER.info("Se ha registrado un nuevo usuario: " + usuario.getUsername());
     }
 
 
     // endpoint LOGIN --> backend(services/AuthManagerService.java): @POST, @Path("/login")
     //                --> android(AuthService): @POST("/v1/auth/login")
+    // Cap log amb contrasenyes ni cap missatge INFO per intent: és l'endpoint més cridat.
+    // El recurs en fa les dues meitats en executors diferents: findForLogin al DbExecutor i checkPassword
+    // al HashExecutor (manager/HashExecutor.java), perquè el PBKDF2 no ocupi els fils de BD
     @Override
     public Usuario login(Usuario usuario) {
-        // --- LOG DE DEPURACIÓN ---
-        LOGGER.info("Intento de login para username: '" + usuario.getUsername() + "' con password: '" + usuario.getPassword() + "'");
+        return checkPassword(usuario, findForLogin(usuario));
+    }
 
-        Usuario usuarioExistent = userDAO.getUsuarioByUsername(usuario.getUsername());
+    @Override
+    public Usuario findForLogin(Usuario usuario) {
+        if (usuario == null || usuario.getUsername() == null || usuario.getPassword() == null) {
+            throw new RuntimeException("Usuario y contraseña obligatorios");
+        }
+        return userDAO.getUsuarioByUsername(usuario.getUsername()); // normalment surt de la UsuarioCache, sense BD
+    }
 
-        if (usuarioExistent != null) {
-            LOGGER.info("Usuario encontrado en BD: '" + usuarioExistent.getUsername() + "' con password en BD: '" + usuarioExistent.getPassword() + "'");
-        } else {
-            LOGGER.warn("Usuario '" + usuario.getUsername() + "' NO encontrado en la base de datos.");
+    @Override
+    public Usuario checkPassword(Usuario usuario, Usuario usuarioExistent) {
+        String username = usuario.getUsername();
+        String password = usuario.getPassword();
+        if (username == null || password == null) {
+            throw new RuntimeException("Usuario y contraseña obligatorios");
         }
 
-        if (usuarioExistent == null || !usuarioExistent.getPassword().equals(usuario.getPassword())) {
-            LOGGER.error("FALLO en la comparación de contraseñas para el usuario: " + usuario.getUsername());
+        if (usuarioExistent == null) {
+            PasswordHasher.verifyDummy(password); // mateix temps de resposta que amb un usuari que existeix
+            LOGGER.warn("Login fallido: usuario no encontrado");
             throw new RuntimeException("Usuario o contraseña incorrectos");
         }
 
-        LOGGER.info("Inicio de sesión exitoso para: " + usuario.getUsername());
+        String stored = usuarioExistent.getPassword();
+        // Login repetit amb la mateixa contrasenya: n'hi ha prou amb la LoginCache, sense PBKDF2
+        if (!loginCache.matches(username, password, stored)) {
+            if (!PasswordHasher.verify(password, stored)) {
+                LOGGER.warn("Login fallido: contraseña incorrecta");
+                throw new RuntimeException("Usuario o contraseña incorrectos");
+            }
+            if (PasswordHasher.needsRehash(stored)) {
+                // Contrasenya en text pla (usuaris d'abans del hash) o amb un cost antic: es guarda amb l'actual
+                stored = PasswordHasher.hash(password);
+                savePassword(usuarioExistent.getId(), stored);
+            }
+            loginCache.put(username, password, stored);
+        }
+
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Inicio de sesión exitoso para: " + username);
+        usuarioExistent.setPassword(null); // és una còpia de la cache: el hash no surt a la resposta
         return usuarioExistent;
     }
 
+    // El nou hash es guarda al DbExecutor sense esperar-lo (checkPassword corre en un fil de hash, sense connexió).
+    // Si la cua és plena no passa res: la BD continua amb l'antic i es tornarà a intentar al pròxim login
+    private void savePassword(int id, String hash) {
+        try {
+            DbExecutor.getInstance().submit(() -> {
+                userDAO.updatePassword(id, hash);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Cua de BD plena: no s'ha actualitzat el hash de la contrasenya de l'usuario " + id);
+        }
+    }
+
+
+    // Llistat paginat per keyset: el client passa l'ID de l'últim usuari rebut (afterId) per demanar la pàgina següent
+    @Override
+    public List<Usuario> getRegisteredUsers(int afterId, int limit, String[] fields) {
+        if (limit <= 0 || limit > MAX_USERS_PAGE) {
+            throw new IllegalArgumentException("El limit ha d'estar entre 1 i " + MAX_USERS_PAGE);
+        }
+        return userDAO.getUsuarios(Math.max(0, afterId), limit, fields);
+    }
+
+
+    // El token porta l'ID signat: els endpoints /shop/me/... el validen en memòria (services/AuthFilter.java)
+    @Override
+    public String issueToken(int usuarioId) {
+        return tokens.issue(usuarioId);
+    }
 
     @Override
-    public List<Usuario> getRegisteredUsers() {
-        return userDAO.getUsuarios();
+    public int verifyToken(String token) {
+        return tokens.verify(token);
     }
 }
@@ -0,0 +1,86 @@
+package manager;
+
+import metrics.MetricsRegistry;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executor acotat per al PBKDF2 del login (manager/PasswordHasher.java), separat del DbExecutor.
+ *
+ * Verificar una contrasenya és feina de CPU de desenes de mil·lisegons: feta als fils de BD, uns quants logins
+ * a la vegada ocupaven fils que tenen reservada una connexió i la resta de consultes esperaven a la cua.
+ * Aquí hi ha tants fils com processadors (-Dauth.hashThreads) i una cua fixa (-Dauth.hashQueueSize); quan és plena
+ * la tasca es rebutja de seguida (503), com al DbExecutor.
+ */
+public class HashExecutor {
+    private static final Logger LOGGER = Logger.getLogger(HashExecutor.class);
+
+    public static final int THREADS = Integer.getInteger("auth.hashThreads", Runtime.getRuntime().availableProcessors());
+    public static final int QUEUE_SIZE = Integer.getInteger("auth.hashQueueSize", 100);
+
+    private static HashExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    private HashExecutor() {
+        AtomicInteger n = new AtomicInteger();
+        int threads = Math.max(1, THREADS);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, QUEUE_SIZE)),
+                r -> {
+                    Thread t = new Thread(r, "auth-hash-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("auth_hash_queue_size", "Logins esperant el PBKDF2", this::getQueueSize);
+        registry.counter("auth_hash_rejected_total", "Logins rebutjats perquè la cua del PBKDF2 era plena (503)", this::getRejectedCount);
+        LOGGER.info("Executor de hash creat (fils=" + threads + ", cua=" + QUEUE_SIZE + ")");
+    }
+
+    public static synchronized HashExecutor getInstance() {
+        if (instance == null) {
+            instance = new HashExecutor();
+        }
+        return instance;
+    }
+
+    /**
+     * Executa la tasca en un fil de hash.
+     * @throws RejectedExecutionException si la cua és plena o l'executor està tancat.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /** Deixa acabar els hash en curs (com a màxim 'timeoutMs') i no n'accepta de nous. */
+    public void shutdown(long timeoutMs) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueueSize() { return executor.getQueue().size(); }
+    public long getRejectedCount() { return rejected.sum(); }
+}
@@ -0,0 +1,324 @@
+package manager;
+
+import db.orm.model.Usuario;
+import org.apache.log4j.Logger;
+import services.DTOs.RankingEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Ranking en memòria, mantingut a mesura que canvien les puntuacions.
+ *
+ * És una skip list indexable (cada enllaç guarda quantes posicions salta), ordenada per
+ * mejorPuntuacion descendent i, en cas d'empat, per username. Inserir, esborrar, buscar la posició
+ * d'un usuari i saltar a la posició N són O(log n); una pàgina del ranking és O(log n + limit).
+ */
+public class Leaderboard {
+    private static final Logger LOGGER = Logger.getLogger(Leaderboard.class);
+
+    private static final int MAX_LEVEL = 32;
+    private static final double P = 0.25;
+
+    private static Leaderboard instance;
+
+    private final Node head = new Node(null, 0, MAX_LEVEL);
+    private final Map<String, Node> byUsername = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong version = new AtomicLong();
+    // Puntuacions que arriben abans que acabi la càrrega (guardat per 'pending'): la fila ja pot haver passat
+    // pel stream amb el valor antic, així que s'apliquen en acabar
+    private final Map<String, Integer> pending = new HashMap<>();
+    private int level = 1;
+    private int size;
+    private volatile boolean loaded;
+
+    private Leaderboard() {}
+
+    public static synchronized Leaderboard getInstance() {
+        if (instance == null) {
+            instance = new Leaderboard();
+        }
+        return instance;
+    }
+
+    /** Substitueix tot el contingut del ranking (càrrega a l'arrencada). */
+    public void load(List<Usuario> usuarios) {
+        if (usuarios == null) {
+            // Error de BD: no el donem per carregat perquè es torni a intentar
+            LOGGER.warn("No s'ha pogut carregar el ranking");
+            return;
+        }
+        load(usuarios.stream());
+    }
+
+    /**
+     * Com {@link #load(List)} però consumint les files a mesura que arriben de la BD,
+     * sense tenir tota la llista d'usuaris en memòria a més de la skip list.
+     * Si el stream falla a mig camí el ranking queda buit i sense carregar.
+     */
+    public void load(Stream<Usuario> usuarios) {
+        lock.writeLock().lock();
+        try {
+            clear();
+            loaded = false;
+            usuarios.forEach(u -> {
+                if (u.getUsername() != null) insert(u.getUsername(), u.getMejorPuntuacion());
+            });
+            synchronized (pending) {
+                for (Map.Entry<String, Integer> e : pending.entrySet()) {
+                    set(e.getKey(), e.getValue());
+                }
+                pending.clear();
+                loaded = true;
+            }
+            version.incrementAndGet();
+        } catch (RuntimeException e) {
+            clear();
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOGGER.info("Ranking carregat en memòria: " + size + " usuaris");
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Afegeix l'usuari o li actualitza la puntuació. Si el ranking encara no s'ha carregat (o s'està carregant)
+     * es guarda i s'aplica al final de la càrrega, així no es perd encara que la fila ja s'hagi llegit.
+     */
+    public void update(String username, int puntuacion) {
+        if (username == null) return;
+        if (!loaded) {
+            synchronized (pending) {
+                if (!loaded) {
+                    pending.put(username, puntuacion);
+                    return;
+                }
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            if (set(username, puntuacion)) version.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String username) {
+        lock.writeLock().lock();
+        try {
+            Node existing = byUsername.get(username);
+            if (existing != null) {
+                delete(existing);
+                version.incrementAndGet();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Pàgina del ranking.
+     * @param offset posicions a saltar (0 = des del primer)
+     * @param limit  màxim d'entrades; 0 o negatiu = fins al final
+     */
+    public List<RankingEntry> top(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            offset = Math.max(0, offset);
+            int count = limit > 0 ? Math.min(limit, size - offset) : size - offset;
+            List<RankingEntry> page = new ArrayList<>(Math.max(0, count));
+            if (count <= 0) return page;
+
+            int rank = offset + 1;
+            Node x = nodeAt(rank);
+            while (x != null && page.size() < count) {
+                page.add(new RankingEntry(rank++, x.username, x.score));
+                x = x.next[0];
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Posició d'un usuari al ranking, o null si no hi és. */
+    public RankingEntry rankOf(String username) {
+        lock.readLock().lock();
+        try {
+            Node node = byUsername.get(username);
+            if (node == null) return null;
+            return new RankingEntry(rankOf(node), node.username, node.score);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Canvia cada vegada que el ranking es modifica. */
+    public long getVersion() {
+        return version.get();
+    }
+
+    // ==========================
+    // SKIP LIST (cal tenir el lock)
+    // ==========================
+
+    private static final class Node {
+        final String username;
+        final int score;
+        final Node[] next;
+        final int[] span; // posicions que salta l'enllaç next[i]
+
+        Node(String username, int score, int levels) {
+            this.username = username;
+            this.score = score;
+            this.next = new Node[levels];
+            this.span = new int[levels];
+        }
+    }
+
+    // true si 'a' va abans que (score, username) al ranking
+    private static boolean before(Node a, int score, String username) {
+        if (a.score != score) return a.score > score;
+        return a.username.compareTo(username) < 0;
+    }
+
+    // false si ja tenia aquesta puntuació
+    private boolean set(String username, int score) {
+        Node existing = byUsername.get(username);
+        if (existing != null) {
+            if (existing.score == score) return false;
+            delete(existing);
+        }
+        insert(username, score);
+        return true;
+    }
+
+    private void insert(String username, int score) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && before(x.next[i], score, username)) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        int lvl = randomLevel();
+        if (lvl > level) {
+            for (int i = level; i < lvl; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = lvl;
+        }
+
+        Node node = new Node(username, score, lvl);
+        for (int i = 0; i < lvl; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        for (int i = lvl; i < level; i++) {
+            update[i].span[i]++;
+        }
+        byUsername.put(username, node);
+        size++;
+    }
+
+    private void delete(Node node) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && before(x.next[i], node.score, node.username)) {
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == node) {
+                update[i].span[i] += node.span[i] - 1;
+                update[i].next[i] = node.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        byUsername.remove(node.username);
+        size--;
+    }
+
+    // Posició (1..size) d'un node que sabem que hi és
+    private int rankOf(Node node) {
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && (x.next[i] == node || before(x.next[i], node.score, node.username))) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x == node) return rank;
+        }
+        return rank;
+    }
+
+    // Node a la posició 'rank' (1..size)
+    private Node nodeAt(int rank) {
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+            if (traversed == rank) return x;
+        }
+        return null;
+    }
+
+    private void clear() {
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            head.next[i] = null;
+            head.span[i] = 0;
+        }
+        byUsername.clear();
+        level = 1;
+        size = 0;
+    }
+
+    private static int randomLevel() {
+        int lvl = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (lvl < MAX_LEVEL && random.nextDouble() < P) {
+            lvl++;
+        }
+        return lvl;
+    }
+}
@@ -0,0 +1,95 @@
+package manager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Credencials validades fa poc: si el mateix usuari torna a fer login amb la mateixa contrasenya abans de TTL_MS,
+ * n'hi ha prou amb un SHA-256 en lloc de tornar a pagar el PBKDF2 sencer (l'app Android fa login a cada arrencada).
+ *
+ * No es guarda la contrasenya: només SHA-256(clau aleatòria del procés + contrasenya), que no serveix fora d'aquest
+ * procés. Cada entrada recorda el hash de la BD amb què es va validar; si la contrasenya canvia, deixa de valer.
+ */
+public class LoginCache {
+    public static final int MAX_SIZE = Integer.getInteger("auth.loginCache.maxSize", 10000);
+    public static final long TTL_MS = Long.getLong("auth.loginCache.ttlSeconds", 900L) * 1000L;
+
+    private static LoginCache instance;
+
+    private final byte[] key = new byte[32];
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<String, Cached>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private LoginCache() {
+        new SecureRandom().nextBytes(key);
+    }
+
+    public static synchronized LoginCache getInstance() {
+        if (instance == null) {
+            instance = new LoginCache();
+        }
+        return instance;
+    }
+
+    /** true si aquest usuari ha validat aquesta mateixa contrasenya fa menys de TTL_MS contra 'storedHash'. */
+    public boolean matches(String username, String password, String storedHash) {
+        Cached entry;
+        synchronized (this) {
+            entry = entries.get(username);
+        }
+        boolean valid = entry != null
+                && System.currentTimeMillis() < entry.expiresAt
+                && entry.storedHash.equals(storedHash)
+                && MessageDigest.isEqual(entry.digest, digest(password));
+        if (valid) hits.increment(); else misses.increment();
+        return valid;
+    }
+
+    public void put(String username, String password, String storedHash) {
+        Cached entry = new Cached(digest(password), storedHash, System.currentTimeMillis() + TTL_MS);
+        synchronized (this) {
+            entries.put(username, entry);
+        }
+    }
+
+    public synchronized void invalidate(String username) {
+        entries.remove(username);
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    private byte[] digest(String password) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(key);
+            return sha.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static final class Cached {
+        final byte[] digest;
+        final String storedHash;
+        final long expiresAt;
+
+        Cached(byte[] digest, String storedHash, long expiresAt) {
+            this.digest = digest;
+            this.storedHash = storedHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
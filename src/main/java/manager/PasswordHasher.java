@@ -0,0 +1,84 @@
+package manager;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Contrasenyes guardades com a PBKDF2-HMAC-SHA256 amb sal aleatòria: pbkdf2$<iteracions>$<sal>$<hash> (Base64).
+ *
+ * El cost es tria amb -Dauth.pbkdf2.iterations; les contrasenyes guardades amb un altre cost continuen
+ * funcionant i AuthManagerImpl les torna a calcular amb l'actual al següent login (needsRehash).
+ * Les contrasenyes antigues en text pla també es validen (isHashed == false) perquè es puguin migrar.
+ */
+public final class PasswordHasher {
+    public static final int ITERATIONS = Integer.getInteger("auth.pbkdf2.iterations", 120000);
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Es verifica quan l'usuari no existeix perquè la resposta trigui el mateix (no es pot endevinar qui està registrat)
+    private static final String DUMMY = hash("dummy-password");
+
+    private PasswordHasher() {}
+
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, ITERATIONS);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + ITERATIONS + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
+
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /** Compara sempre tots els bytes (MessageDigest.isEqual), encerti o no. */
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) return false;
+        if (!isHashed(stored)) {
+            // Contrasenya antiga en text pla
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(pbkdf2(password, salt, iterations), expected);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /** Mateix cost de CPU que una verificació real, per als usuaris que no existeixen. */
+    public static void verifyDummy(String password) {
+        verify(password != null ? password : "", DUMMY);
+    }
+
+    /** Text pla o cost diferent de l'actual: cal tornar-la a guardar. */
+    public static boolean needsRehash(String stored) {
+        return !isHashed(stored) || !stored.startsWith(PREFIX + ITERATIONS + "$");
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 no disponible", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
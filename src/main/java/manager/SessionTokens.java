@@ -0,0 +1,96 @@
+package manager;
+
+import org.apache.log4j.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Token de sessió signat que es dona al login: <idUsuari>.<caducitat en segons epoch>.<HMAC-SHA256 en Base64url>.
+ *
+ * Validar-lo només és recalcular l'HMAC: ni BD ni estat al servidor. La clau surt de -Dauth.tokenSecret
+ * (o la variable d'entorn AUTH_TOKEN_SECRET); si no n'hi ha, se'n genera una a l'arrencada i els tokens
+ * deixen de valer quan es reinicia el servidor (l'app torna a fer login).
+ */
+public class SessionTokens {
+    private static final Logger LOGGER = Logger.getLogger(SessionTokens.class);
+
+    public static final long TTL_SECONDS = Long.getLong("auth.tokenTtlSeconds", 86400L);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static SessionTokens instance;
+
+    private final SecretKeySpec key;
+    // Mac no és thread-safe i crear-ne un per token costa més que l'HMAC mateix
+    private final ThreadLocal<Mac> macs;
+
+    private SessionTokens(byte[] secret) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public static synchronized SessionTokens getInstance() {
+        if (instance == null) {
+            String secret = System.getProperty("auth.tokenSecret", System.getenv("AUTH_TOKEN_SECRET"));
+            byte[] bytes;
+            if (secret != null && !secret.isEmpty()) {
+                bytes = secret.getBytes(StandardCharsets.UTF_8);
+            } else {
+                bytes = new byte[32];
+                new SecureRandom().nextBytes(bytes);
+                LOGGER.warn("Sense auth.tokenSecret: clau aleatòria, els tokens no sobreviuen a un reinici");
+            }
+            instance = new SessionTokens(bytes);
+        }
+        return instance;
+    }
+
+    public String issue(int usuarioId) {
+        long expires = System.currentTimeMillis() / 1000L + TTL_SECONDS;
+        String payload = usuarioId + "." + expires;
+        return payload + "." + sign(payload);
+    }
+
+    /** ID de l'usuari del token, o -1 si està mal format, la signatura no quadra o ha caducat. */
+    public int verify(String token) {
+        if (token == null) return -1;
+        int last = token.lastIndexOf('.');
+        int first = token.indexOf('.');
+        if (first <= 0 || last <= first) return -1;
+
+        String payload = token.substring(0, last);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(last + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) return -1;
+
+        try {
+            int usuarioId = Integer.parseInt(payload.substring(0, first));
+            long expires = Long.parseLong(payload.substring(first + 1));
+            if (System.currentTimeMillis() / 1000L >= expires) return -1;
+            return usuarioId;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String sign(String payload) {
+        byte[] mac = macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 no disponible", e);
+        }
+    }
+}
@@ -5,15 +5,32 @@ package manager;
 import db.orm.model.Item;
 import db.orm.model.Usuario;
 import services.DTOs.ItemInventario;
+import services.DTOs.RankingEntry;
 
 import java.util.List;
 
 public interface ShopManager {
     List<Item> getItemsTienda();
     void comprarItem(String username, int itemId);
+    void comprarCarrito(String username, List<Integer> itemIds);
     int getMonedas(String username);
     Usuario getPerfil(String username);
-    List<Usuario> getRanking();
+    List<RankingEntry> getRanking(int offset, int limit);
+    RankingEntry getPosicionRanking(String username);
     List<ItemInventario> getItemByUsuario(String username);
+
+    // Mateixes operacions amb l'ID del token de sessió (manager/SessionTokens.java): sense buscar l'usuari pel username
+    void comprarItem(int usuarioId, int itemId);
+    void comprarCarrito(int usuarioId, List<Integer> itemIds);
+    int getMonedas(int usuarioId);
+    Usuario getPerfil(int usuarioId);
+    List<ItemInventario> getItemByUsuario(int usuarioId);
+
+    // Versions de les dades compartides: canvien quan canvia el catàleg / el ranking (services/ResponseCache.java)
+    long getCatalogVersion();
+    long getRankingVersion();
+    // false mentre el catàleg / el ranking no són a memòria: servir-los encara toca la BD
+    boolean isCatalogLoaded();
+    boolean isRankingLoaded();
 }
 
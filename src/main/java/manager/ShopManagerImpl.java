@@ -5,30 +5,34 @@ import db.orm.dao.*;
 import db.orm.dao.IItemDAO;
 import db.orm.dao.InventarioDAOImpl;
 import db.orm.dao.InventarioDAO;
-import db.orm.model.Inventario;
 import db.orm.model.Item;
 import db.orm.model.Usuario;
 
+import metrics.TimedProxy;
 import org.apache.log4j.Logger;
 import services.DTOs.ItemInventario;
+import services.DTOs.RankingEntry;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Stream;
 
 public class ShopManagerImpl implements ShopManager {
     private static final Logger LOGGER = Logger.getLogger(ShopManagerImpl.class);
+    public static final int MAX_ITEMS_CARRITO = 100;
 
     private static ShopManagerImpl instance;
     private final IItemDAO itemDAO;
     private final IUsuarioDAO usuarioDAO;
     private final InventarioDAO inventarioDAO;
+    private final Leaderboard leaderboard;
 
     private ShopManagerImpl() {
-        this.usuarioDAO = UsuarioDAOImpl.getInstance();
-        this.itemDAO = ItemDAOImpl.getInstance();
-        this.inventarioDAO = InventarioDAOImpl.getInstance();
+        // Cada crida als DAOs queda cronometrada a /v1/metrics (metrics/TimedProxy.java)
+        this.usuarioDAO = TimedProxy.instrument(IUsuarioDAO.class, UsuarioDAOImpl.getInstance(), "UsuarioDAO");
+        this.itemDAO = TimedProxy.instrument(IItemDAO.class, ItemDAOImpl.getInstance(), "ItemDAO");
+        this.inventarioDAO = TimedProxy.instrument(InventarioDAO.class, InventarioDAOImpl.getInstance(), "InventarioDAO");
+        this.leaderboard = Leaderboard.getInstance();
     }
 
     public static ShopManagerImpl getInstance() {
@@ -39,12 +43,23 @@ public class ShopManagerImpl implements ShopManager {
         return instance;
     }
 
+    // Es crida des de Main: catàleg i ranking a memòria abans de la primera petició
+    public void warmUp() {
+        try {
+            ItemDAOImpl.getInstance().warmUp();
+        } catch (RuntimeException e) {
+            // Sense BD a l'arrencada el servidor arrenca igualment: el catàleg es carregarà a la primera petició
+            LOGGER.error("No s'ha pogut carregar el catàleg de la tenda", e);
+        }
+        loadRanking();
+    }
+
 
     // endpoint GET ITEMS TIENDA --> backend(services/ShopService.java): @GET, @Path("/items")
     //                           --> android(ShopService): @GET("/v1/shop/items")
     @Override
     public List<Item> getItemsTienda() {
-        LOGGER.info("Obteniendo lista de items de la tienda");
+        LOGGER.debug("Obteniendo lista de items de la tienda");
         return itemDAO.getItems();
     }
 
@@ -53,31 +68,73 @@ public class ShopManagerImpl implements ShopManager {
     //                         --> android(ShopService): @POST("/v1/shop/buy/{id}")
     @Override
     public void comprarItem(String username, int itemId) {
+        comprarItem(usuarioIdOf(username, "Usuario no encontrado"), itemId);
+    }
 
-        Usuario usuario = usuarioDAO.getUsuarioByUsername(username);
-        if (usuario == null) {
-            LOGGER.error("Intento de compra fallido: Usuario no encontrado: " + username);
-            throw new RuntimeException("Usuario no encontrado");
-        }
-
+    // Amb token (POST /v1/shop/me/buy/{itemId}) l'ID ja ve signat: no cal buscar l'usuari
+    @Override
+    public void comprarItem(int usuarioId, int itemId) {
         Item item = itemDAO.getItem(itemId);
         if (item == null) {
             LOGGER.error("Intento de compra fallido: Item no encontrado: " + itemId);
             throw new RuntimeException("Item no encontrado");
         }
 
-        int monedas = getMonedas(username);
-        if (monedas < item.getPrecio()) throw new RuntimeException("Monedas insuficientes");;
+        // Descompte condicional de monedes + alta a l'inventari en una sola transacció:
+        // dues compres simultànies no poden gastar les mateixes monedes
+        boolean comprat = inventarioDAO.comprarItem(usuarioId, item.getId(), item.getPrecio());
+        if (!comprat) throw new RuntimeException("Monedas insuficientes");
 
-        usuario.setMonedas(monedas-item.getPrecio());
-        usuarioDAO.updateUsuario(usuario);
+        LOGGER.info("Usuario " + usuarioId + " ha comprado el item: " + item);
+    }
 
-        LOGGER.info("Monedas de usuario: " + usuarioDAO.getUsuarioByUsername(username).getMonedas());
 
-        Inventario inventario = new Inventario(usuario.getId(), item.getId());
-        inventarioDAO.addInventario(inventario);
+    // endpoint BUY CARRITO --> backend(services/ShopService.java): @POST, @Path("/buy")
+    // Tot o res: o es compren tots els items del carrito o cap
+    @Override
+    public void comprarCarrito(String username, List<Integer> itemIds) {
+        comprarCarrito(usuarioIdOf(username, "Usuario no encontrado"), itemIds);
+    }
 
-        LOGGER.info("Usuario '" + username + "' ha comprado el item: " + item);
+    @Override
+    public void comprarCarrito(int usuarioId, List<Integer> itemIds) {
+        validarCarrito(itemIds);
+
+        // Els preus surten del catàleg en memòria: cap consulta per item
+        long total = 0;
+        for (Integer itemId : itemIds) {
+            Item item = itemId != null ? itemDAO.getItem(itemId) : null;
+            if (item == null) {
+                LOGGER.error("Intento de compra fallido: Item no encontrado: " + itemId);
+                throw new RuntimeException("Item no encontrado");
+            }
+            total += item.getPrecio();
+        }
+        if (total > Integer.MAX_VALUE) throw new RuntimeException("Monedas insuficientes");
+
+        boolean comprat = inventarioDAO.comprarItems(usuarioId, itemIds, (int) total);
+        if (!comprat) throw new RuntimeException("Monedas insuficientes");
+
+        LOGGER.info("Usuario " + usuarioId + " ha comprado " + itemIds.size() + " items por " + total + " monedas");
+    }
+
+    private static void validarCarrito(List<Integer> itemIds) {
+        if (itemIds == null || itemIds.isEmpty()) {
+            throw new RuntimeException("El carrito está vacío");
+        }
+        if (itemIds.size() > MAX_ITEMS_CARRITO) {
+            throw new RuntimeException("Máximo " + MAX_ITEMS_CARRITO + " items por compra");
+        }
+    }
+
+    // username --> ID (normalment surt de la UsuarioCache). Els endpoints amb token ja porten l'ID i no passen per aquí
+    private int usuarioIdOf(String username, String notFound) {
+        Usuario usuario = usuarioDAO.getUsuarioByUsername(username);
+        if (usuario == null) {
+            LOGGER.error("Usuario no encontrado: " + username);
+            throw new RuntimeException(notFound);
+        }
+        return usuario.getId();
     }
 
 
@@ -93,7 +150,16 @@ public class ShopManagerImpl implements ShopManager {
             throw new RuntimeException("Usuari no trobat");
         }
 
-        LOGGER.info("monedas: " + u.getMonedas());
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("monedas de " + username + ": " + u.getMonedas());
+        return u.getMonedas();
+    }
+
+    @Override
+    public int getMonedas(int usuarioId) {
+        Usuario u = this.usuarioDAO.getUsuario(usuarioId); // cache per ID, sense BD si ja hi és
+        if (u == null) {
+            throw new RuntimeException("Usuari no trobat");
+        }
         return u.getMonedas();
     }
 
@@ -112,10 +178,59 @@ public class ShopManagerImpl implements ShopManager {
 
     // endpoint GET RANKING USUARIOS --> backend(services/ShopService.java): @GET, @Path("/ranking")
     //                               --> android(ShopService): @GET("/v1/shop/ranking")
+    // El ranking viu en memòria (Leaderboard): una pàgina és O(log n + limit), sense tocar la BD
     @Override
-    public List<Usuario> getRanking() {
-        List<Usuario> ranking = usuarioDAO.getUsuariosRanking();
-        return ranking;
+    public List<RankingEntry> getRanking(int offset, int limit) {
+        ensureRankingLoaded();
+        return leaderboard.top(offset, limit);
+    }
+
+    @Override
+    public long getCatalogVersion() {
+        return itemDAO.getCatalogVersion();
+    }
+
+    @Override
+    public long getRankingVersion() {
+        return leaderboard.getVersion();
+    }
+
+    @Override
+    public boolean isCatalogLoaded() {
+        return itemDAO.isCatalogLoaded();
+    }
+
+    @Override
+    public boolean isRankingLoaded() {
+        return leaderboard.isLoaded();
+    }
+
+    @Override
+    public RankingEntry getPosicionRanking(String username) {
+        ensureRankingLoaded();
+        RankingEntry entry = leaderboard.rankOf(username);
+        if (entry == null) {
+            throw new RuntimeException("Usuari no trobat");
+        }
+        return entry;
+    }
+
+    private void ensureRankingLoaded() {
+        if (!leaderboard.isLoaded()) {
+            synchronized (leaderboard) {
+                if (!leaderboard.isLoaded()) loadRanking();
+            }
+        }
+    }
+
+    // Les files van de la BD a la skip list una a una, sense llista intermèdia
+    private void loadRanking() {
+        try (Stream<Usuario> usuarios = usuarioDAO.streamUsuariosRanking()) {
+            leaderboard.load(usuarios);
+        } catch (RuntimeException e) {
+            // No el donem per carregat: es tornarà a intentar a la pròxima petició
+            LOGGER.error("No s'ha pogut carregar el ranking", e);
+        }
     }
 
 
@@ -130,14 +245,25 @@ public class ShopManagerImpl implements ShopManager {
             throw new RuntimeException("Usuari no trobat");
         }
 
-        LOGGER.info("Obtenint perfil de: " + u.getEmail());
+        if (LOGGER.isDebugEnabled()) LOGGER.debug("Obtenint perfil de: " + username);
+        u.setPassword(null); // còpia de la cache: el hash de la contrasenya no surt al perfil
+        return u;
+    }
+
+    @Override
+    public Usuario getPerfil(int usuarioId) {
+        Usuario u = this.usuarioDAO.getUsuario(usuarioId);
+        if (u == null) {
+            throw new RuntimeException("Usuari no trobat");
+        }
+        u.setPassword(null);
         return u;
     }
 
 //    @Override
 //    public Usuario getPerfil(String username){
 //        Usuario u = this.usuarioDAO.getUsuarioByUsername(username);
-//        LOGGER.info("Obtenint perfil de: " + u.getEmail());
+//        if (LOGGER.isDebugEnabled()) LOGGER.debug("Obtenint perfil de: " + username);
 //        return u;
 //    }
 
@@ -151,8 +277,8 @@ public class ShopManagerImpl implements ShopManager {
 
 
 
-    // Aquesta funció construeix l’inventari agregat d’un usuari agrupant les entrades per tipus d’item mitjançant un Map,
-    // de manera que cada item apareix una sola vegada amb la seva quantitat total.
+    // Aquesta funció retorna l’inventari agregat d’un usuari: cada item apareix una sola vegada amb la seva quantitat total.
+    // L'agrupació (JOIN + GROUP BY) es fa a la BD, així que és una sola consulta encara que l'usuari tingui milers de compres.
     public List<ItemInventario> getItemByUsuario(String username) {
         Usuario u = this.usuarioDAO.getUsuarioByUsername(username);
 
@@ -160,26 +286,7 @@ public class ShopManagerImpl implements ShopManager {
             throw new RuntimeException("Usuari no trobat");
         }
 
-        List<Inventario> inventarioList = this.inventarioDAO.getInventario(u.getId());
-
-        // Usamos un Mapa para contar: Clave=ID del Item, Valor=Objeto ItemInventario
-        // Serveix per agrupar els items iguals i comptar-ne la quantitat
-        Map<Integer, ItemInventario> contador = new HashMap<>();
-
-        if (inventarioList != null) {
-            for (Inventario inv : inventarioList) {
-                Item item = itemDAO.getItem(inv.getItemId());
-                if (item != null) {
-                    if (contador.containsKey(item.getId())) {
-                        ItemInventario existente = contador.get(item.getId());
-                        existente.setCantidad(existente.getCantidad() + 1);
-                    } else {
-                        contador.put(item.getId(), new ItemInventario(item, 1));
-                    }
-                }
-            }
-        }
-        return new ArrayList<>(contador.values());  // Convertim els valors del mapa a una llista List<ItemInventario> i la retornem
+        return getItemByUsuario(u.getId());
         // retorna: Llista d'ItemInventario amb items agrupats i quantitats
         // [
         //  ItemInventario(Boost, cantidad=x),
@@ -188,6 +295,14 @@ public class ShopManagerImpl implements ShopManager {
         //]
     }
 
+    // Com a molt una fila per item del catàleg: es llegeix sencer al fil de BD i la connexió torna al pool
+    // abans d'escriure la resposta (amb un stream, un client lent la retenia fins acabar de rebre-la)
+    @Override
+    public List<ItemInventario> getItemByUsuario(int usuarioId) {
+        List<ItemInventario> inventario = this.inventarioDAO.getInventarioAgrupado(usuarioId);
+        return inventario != null ? inventario : new ArrayList<>();
+    }
+
 
 }
 
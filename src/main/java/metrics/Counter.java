@@ -0,0 +1,22 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Comptador que només creix. LongAdder: molts fils incrementant a la vegada no es fan esperar. */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {}
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
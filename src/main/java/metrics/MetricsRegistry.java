@@ -0,0 +1,151 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Registre de mètriques del servidor, exposat a /v1/metrics en format text de Prometheus (services/MetricsService.java).
+ *
+ * Els comptadors i histogrames es creen un cop (normalment en un camp static final o en un mapa per mètode)
+ * i a partir d'aquí registrar una mesura no passa per cap mapa ni lock. Les mètriques que ja existien
+ * (pool de connexions, DbExecutor, caches) s'hi afegeixen com a funcions que es llegeixen en exportar.
+ *
+ * Les etiquetes es passen en parelles: counter("http_requests_total", "...", "method", "GET", "status", "2xx").
+ * Amb -Dmetrics.enabled=false no s'instrumenten els DAOs ni les peticions (TimedProxy, MetricsListener).
+ */
+public final class MetricsRegistry {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("metrics.enabled", "true"));
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static MetricsRegistry instance;
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private MetricsRegistry() {}
+
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).series.computeIfAbsent(labels(labels), k -> new Counter());
+    }
+
+    /** Comptador que ja porta algú altre (p.ex. un LongAdder de ConnectionPool): es llegeix en exportar. */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).series.put(labels(labels), value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).series.put(labels(labels), value);
+    }
+
+    /** Histograma de durades; el nom ha d'acabar en _seconds (s'exporta en segons). */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, Type.SUMMARY).series.computeIfAbsent(labels(labels), k -> new Histogram());
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("La mètrica " + name + " ja existeix com a " + family.type);
+        }
+        return family;
+    }
+
+    // ==========================
+    // EXPORTACIÓ (format text de Prometheus 0.0.4)
+    // ==========================
+    public void writePrometheus(Writer out) throws IOException {
+        for (Map.Entry<String, Family> f : families.entrySet()) {
+            String name = f.getKey();
+            Family family = f.getValue();
+            out.write("# HELP " + name + " " + family.help + "\n");
+            out.write("# TYPE " + name + " " + family.type.prometheus + "\n");
+            for (Map.Entry<String, Object> s : family.series.entrySet()) {
+                writeSeries(out, name, s.getKey(), s.getValue());
+            }
+        }
+    }
+
+    private static void writeSeries(Writer out, String name, String labels, Object metric) throws IOException {
+        if (metric instanceof Counter) {
+            sample(out, name, labels, null, ((Counter) metric).get());
+        } else if (metric instanceof LongSupplier) {
+            sample(out, name, labels, null, ((LongSupplier) metric).getAsLong());
+        } else if (metric instanceof DoubleSupplier) {
+            sample(out, name, labels, null, ((DoubleSupplier) metric).getAsDouble());
+        } else if (metric instanceof Histogram) {
+            Histogram.Snapshot snapshot = ((Histogram) metric).snapshot();
+            for (double q : QUANTILES) {
+                sample(out, name, labels, "quantile=\"" + q + "\"", snapshot.quantile(q) / 1e9);
+            }
+            sample(out, name + "_sum", labels, null, snapshot.getSumNanos() / 1e9);
+            sample(out, name + "_count", labels, null, snapshot.getCount());
+        }
+    }
+
+    private static void sample(Writer out, String name, String labels, String extra, double value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.write('{');
+            out.write(labels);
+            if (extra != null) {
+                if (!labels.isEmpty()) out.write(',');
+                out.write(extra);
+            }
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : Double.toString(value));
+        out.write('\n');
+    }
+
+    // "k1","v1","k2","v2" -> k1="v1",k2="v2" (també és la clau de la sèrie dins la família)
+    private static String labels(String... pairs) {
+        if (pairs.length % 2 != 0) throw new IllegalArgumentException("Etiquetes en parelles nom, valor");
+        List<String> parts = new ArrayList<>(pairs.length / 2);
+        for (int i = 0; i < pairs.length; i += 2) {
+            parts.add(pairs[i] + "=\"" + escape(pairs[i + 1]) + "\"");
+        }
+        return String.join(",", parts);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+        final String prometheus;
+
+        Type(String prometheus) {
+            this.prometheus = prometheus;
+        }
+    }
+
+    private static final class Family {
+        final String help;
+        final Type type;
+        // Ordenades per etiquetes perquè la sortida sigui estable entre lectures
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Embolcalla un DAO (o qualsevol objecte darrere d'una interfície) perquè cada mètode de la interfície
+ * mesuri el seu temps a dao_call_seconds{dao=..., method=...} i compti les excepcions a dao_errors_total.
+ *
+ * Els histogrames es resolen un cop per mètode en crear el proxy, així una crida només afegeix
+ * dos System.nanoTime() i la invocació per reflexió. Els mètodes que tornen un Stream només mesuren
+ * l'obertura del cursor, no el recorregut.
+ *
+ * Mentre dura la crida, currentCall() diu quin mètode del DAO s'està executant en aquest fil: db/orm/SqlTracer.java
+ * ho fa servir per saber d'on ve una consulta lenta sense haver de recórrer la pila.
+ */
+public final class TimedProxy implements InvocationHandler {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private final Object target;
+    private final Map<Method, Timer> timers = new HashMap<>();
+
+    private TimedProxy(Object target, Class<?> iface, String dao) {
+        this.target = target;
+        for (Method m : iface.getMethods()) {
+            timers.put(m, new Timer(dao, m.getName()));
+        }
+    }
+
+    /** Torna 'target' tal qual si les mètriques estan desactivades (-Dmetrics.enabled=false). */
+    @SuppressWarnings("unchecked")
+    public static <T> T instrument(Class<T> iface, T target, String dao) {
+        if (!MetricsRegistry.ENABLED) return target;
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, new TimedProxy(target, iface, dao));
+    }
+
+    /** "UsuarioDAO.getUsuarios" si aquest fil és dins d'una crida a un DAO instrumentat; si no, null. */
+    public static String currentCall() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Timer timer = timers.get(method);
+        if (timer == null) {
+            // equals/hashCode/toString d'Object
+            return method.invoke(target, args);
+        }
+        String previous = CURRENT.get();
+        CURRENT.set(timer.name);
+        long start = System.nanoTime();
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            timer.errors.increment();
+            throw e.getCause();
+        } finally {
+            timer.latency.recordSince(start);
+            CURRENT.set(previous);
+        }
+    }
+
+    private static final class Timer {
+        final String name;
+        final Histogram latency;
+        final Counter errors;
+
+        Timer(String dao, String method) {
+            MetricsRegistry registry = MetricsRegistry.getInstance();
+            this.name = dao + "." + method;
+            this.latency = registry.histogram("dao_call_seconds", "Temps de cada crida als DAOs",
+                    "dao", dao, "method", method);
+            this.errors = registry.counter("dao_errors_total", "Crides als DAOs que han acabat amb excepció",
+                    "dao", dao, "method", method);
+        }
+    }
+}
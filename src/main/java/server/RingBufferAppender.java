@@ -0,0 +1,178 @@
+package server;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appender asíncron de log4j: el fil que fa el log només deixa l'event en un buffer circular
+ * (ArrayBlockingQueue de mida fixa) i un fil propi els formata i els escriu per lots, amb un sol flush per lot.
+ *
+ * L'AsyncAppender de log4j 1.2 no es pot configurar des d'un .properties (necessita appender-ref en XML);
+ * aquest sí, amb les mateixes opcions de layout que un ConsoleAppender/FileAppender:
+ *
+ *   log4j.appender.async=server.RingBufferAppender
+ *   log4j.appender.async.Target=System.out        (o File=logs/server.log)
+ *   log4j.appender.async.BufferSize=8192
+ *   log4j.appender.async.BatchSize=256
+ *   log4j.appender.async.layout=org.apache.log4j.PatternLayout
+ *
+ * Si el buffer és ple, els missatges per sota de WARN es descarten (i es compten) en lloc de frenar
+ * les peticions; WARN i ERROR esperen lloc. Amb LogManager.shutdown() s'escriu el que quedi.
+ */
+public class RingBufferAppender extends AppenderSkeleton {
+    private int bufferSize = 8192;
+    private int batchSize = 256;
+    private String target = "System.out";
+    private String file;
+
+    private ArrayBlockingQueue<LoggingEvent> buffer;
+    private Writer writer;
+    private Thread worker;
+    private volatile boolean running;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public void setBufferSize(int bufferSize) { this.bufferSize = bufferSize; }
+    public int getBufferSize() { return bufferSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+    public int getBatchSize() { return batchSize; }
+    public void setTarget(String target) { this.target = target; }
+    public String getTarget() { return target; }
+    public void setFile(String file) { this.file = file; }
+    public String getFile() { return file; }
+
+    /** Missatges descartats perquè el buffer era ple. */
+    public long getDropped() { return dropped.get(); }
+
+    @Override
+    public void activateOptions() {
+        try {
+            OutputStream out;
+            if (file != null && !file.isEmpty()) {
+                File f = new File(file);
+                if (f.getParentFile() != null) f.getParentFile().mkdirs();
+                out = new FileOutputStream(f, true);
+            } else {
+                out = "System.err".equalsIgnoreCase(target) ? System.err : System.out;
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        } catch (IOException e) {
+            LogLog.error("No s'ha pogut obrir el fitxer de log " + file, e);
+            return;
+        }
+        buffer = new ArrayBlockingQueue<>(Math.max(bufferSize, 16));
+        running = true;
+        worker = new Thread(this::drain, "log-writer-" + getName());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        if (buffer == null) return;
+        // Les dades que depenen del fil que fa el log s'han de capturar ara, no quan s'escrigui
+        event.getThreadName();
+        event.getNDC();
+        event.getMDCCopy();
+        event.getRenderedMessage();
+        event.getThrowableStrRep();
+
+        if (buffer.offer(event)) return;
+        if (event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            try {
+                buffer.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        List<LoggingEvent> batch = new ArrayList<>(batchSize);
+        long reportedDropped = 0;
+        boolean interrupted = false;
+        while (!interrupted && (running || !buffer.isEmpty())) {
+            try {
+                LoggingEvent first = buffer.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // close() (o qui sigui que atura el fil, p.ex. exec:java) ens interromp: s'escriu el que quedi i s'acaba
+                interrupted = true;
+            }
+            buffer.drainTo(batch, interrupted ? Integer.MAX_VALUE : batchSize - 1);
+            try {
+                for (LoggingEvent event : batch) write(event);
+                long d = dropped.get();
+                if (d != reportedDropped) {
+                    writer.write("RingBufferAppender: " + (d - reportedDropped) + " missatges descartats (buffer ple)"
+                            + System.lineSeparator());
+                    reportedDropped = d;
+                }
+                writer.flush();
+            } catch (IOException e) {
+                LogLog.error("Error escrivint el log", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(LoggingEvent event) throws IOException {
+        writer.write(layout.format(event));
+        if (layout.ignoresThrowable()) {
+            String[] lines = event.getThrowableStrRep();
+            if (lines != null) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write(System.lineSeparator());
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (writer != null) {
+                writer.flush();
+                if (file != null && !file.isEmpty()) writer.close();
+            }
+        } catch (IOException e) {
+            LogLog.error("Error tancant el log", e);
+        }
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return true;
+    }
+}
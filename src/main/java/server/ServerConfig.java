@@ -0,0 +1,156 @@
+package server;
+
+import org.apache.log4j.Logger;
+import org.glassfish.grizzly.http.KeepAlive;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Configuració del servidor HTTP (Grizzly): URI, fils, keep-alive, buffers de socket i tancament.
+ *
+ * Cada valor es busca, de més a menys prioritari, a:
+ *  1. propietats de sistema      -Dserver.worker.max=64
+ *  2. variables d'entorn         SERVER_WORKER_MAX=64
+ *  3. el fitxer de configuració  server.properties (o el que indiqui -Dserver.config)
+ * Els valors numèrics a 0 o negatius deixen el valor per defecte de Grizzly.
+ */
+public class ServerConfig {
+    private static final Logger LOGGER = Logger.getLogger(ServerConfig.class);
+
+    public static final String BASE_URI = "server.baseUri";
+    public static final String SELECTOR_THREADS = "server.selectorThreads";
+    public static final String WORKER_CORE = "server.worker.core";
+    public static final String WORKER_MAX = "server.worker.max";
+    public static final String WORKER_QUEUE_LIMIT = "server.worker.queueLimit";
+    public static final String KEEP_ALIVE_IDLE_SECONDS = "server.keepAlive.idleSeconds";
+    public static final String KEEP_ALIVE_MAX_REQUESTS = "server.keepAlive.maxRequests";
+    public static final String READ_BUFFER_SIZE = "server.socket.readBufferSize";
+    public static final String WRITE_BUFFER_SIZE = "server.socket.writeBufferSize";
+    public static final String TCP_NO_DELAY = "server.socket.tcpNoDelay";
+    public static final String BACKLOG = "server.socket.backlog";
+    public static final String SHUTDOWN_GRACE_SECONDS = "server.shutdown.graceSeconds";
+
+    private static final String[] KEYS = {
+            BASE_URI, SELECTOR_THREADS, WORKER_CORE, WORKER_MAX, WORKER_QUEUE_LIMIT,
+            KEEP_ALIVE_IDLE_SECONDS, KEEP_ALIVE_MAX_REQUESTS, READ_BUFFER_SIZE, WRITE_BUFFER_SIZE,
+            TCP_NO_DELAY, BACKLOG, SHUTDOWN_GRACE_SECONDS
+    };
+
+    private static final String DEFAULT_BASE_URI = "http://0.0.0.0:8080/v1/";
+    private static final String DEFAULT_FILE = "server.properties";
+
+    private final Properties props;
+
+    private ServerConfig(Properties props) {
+        this.props = props;
+    }
+
+    /** Llegeix fitxer, entorn i propietats de sistema (en aquest ordre de menys a més prioritat). */
+    public static ServerConfig load() {
+        Properties props = new Properties();
+
+        String path = System.getProperty("server.config", System.getenv("SERVER_CONFIG"));
+        File file = new File(path != null ? path : DEFAULT_FILE);
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+                LOGGER.info("Configuració del servidor llegida de " + file.getAbsolutePath());
+            } catch (IOException e) {
+                LOGGER.warn("No s'ha pogut llegir " + file.getAbsolutePath(), e);
+            }
+        } else if (path != null) {
+            LOGGER.warn("No existeix el fitxer de configuració " + file.getAbsolutePath());
+        }
+
+        Map<String, String> env = System.getenv();
+        for (String key : KEYS) {
+            String value = env.get(envName(key));
+            if (value != null) props.setProperty(key, value);
+            value = System.getProperty(key);
+            if (value != null) props.setProperty(key, value);
+        }
+        return new ServerConfig(props);
+    }
+
+    // server.keepAlive.idleSeconds --> SERVER_KEEP_ALIVE_IDLE_SECONDS
+    static String envName(String key) {
+        return key.replaceAll("([a-z])([A-Z])", "$1_$2").replace('.', '_').toUpperCase();
+    }
+
+    public String getBaseUri() { return props.getProperty(BASE_URI, DEFAULT_BASE_URI).trim(); }
+    public int getSelectorThreads() { return getInt(SELECTOR_THREADS, 0); }
+    public int getWorkerCore() { return getInt(WORKER_CORE, 0); }
+    public int getWorkerMax() { return getInt(WORKER_MAX, 0); }
+    public int getWorkerQueueLimit() { return getInt(WORKER_QUEUE_LIMIT, 0); }
+    public int getKeepAliveIdleSeconds() { return getInt(KEEP_ALIVE_IDLE_SECONDS, 0); }
+    public int getKeepAliveMaxRequests() { return getInt(KEEP_ALIVE_MAX_REQUESTS, 0); }
+    public int getReadBufferSize() { return getInt(READ_BUFFER_SIZE, 0); }
+    public int getWriteBufferSize() { return getInt(WRITE_BUFFER_SIZE, 0); }
+    public int getBacklog() { return getInt(BACKLOG, 0); }
+    public long getShutdownGraceSeconds() { return getInt(SHUTDOWN_GRACE_SECONDS, 30); }
+
+    public Boolean getTcpNoDelay() {
+        String value = props.getProperty(TCP_NO_DELAY);
+        return value != null ? Boolean.valueOf(value.trim()) : null;
+    }
+
+    /** Aplica la configuració als listeners del servidor. S'ha de cridar abans de server.start(). */
+    public void apply(HttpServer server) {
+        for (NetworkListener listener : server.getListeners()) {
+            TCPNIOTransport transport = listener.getTransport();
+
+            if (getSelectorThreads() > 0) transport.setSelectorRunnersCount(getSelectorThreads());
+            if (getReadBufferSize() > 0) transport.setReadBufferSize(getReadBufferSize());
+            if (getWriteBufferSize() > 0) transport.setWriteBufferSize(getWriteBufferSize());
+            if (getBacklog() > 0) transport.setServerConnectionBackLog(getBacklog());
+            if (getTcpNoDelay() != null) transport.setTcpNoDelay(getTcpNoDelay());
+
+            // Amb fils virtuals no hi ha pool de treball que configurar
+            if (!VirtualThreads.isEnabled()) {
+                ThreadPoolConfig workers = transport.getWorkerThreadPoolConfig();
+                if (workers == null) workers = ThreadPoolConfig.defaultConfig();
+                workers = workers.copy();
+                if (getWorkerMax() > 0) workers.setMaxPoolSize(getWorkerMax());
+                if (getWorkerCore() > 0) workers.setCorePoolSize(Math.min(getWorkerCore(), workers.getMaxPoolSize()));
+                if (workers.getCorePoolSize() > workers.getMaxPoolSize()) workers.setCorePoolSize(workers.getMaxPoolSize());
+                if (getWorkerQueueLimit() > 0) workers.setQueueLimit(getWorkerQueueLimit());
+                transport.setWorkerThreadPoolConfig(workers);
+            }
+
+            KeepAlive keepAlive = listener.getKeepAlive();
+            if (getKeepAliveIdleSeconds() > 0) keepAlive.setIdleTimeoutInSeconds(getKeepAliveIdleSeconds());
+            if (getKeepAliveMaxRequests() > 0) keepAlive.setMaxRequestsCount(getKeepAliveMaxRequests());
+        }
+        LOGGER.info("Configuració del servidor: " + this);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Valor no vàlid per " + key + ": '" + value + "', es fa servir " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ServerConfig{");
+        for (int i = 0; i < KEYS.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(KEYS[i]).append('=').append(props.getProperty(KEYS[i], "-"));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,323 @@
+package server;
+
+import org.apache.log4j.Logger;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.MimeType;
+
+import tools.ImageOptimizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fitxers estàtics (public/) amb el que el StaticHttpHandler de Grizzly no fa:
+ *  - ETag fort (mida + data de modificació) i Last-Modified: If-None-Match / If-Modified-Since --> 304 sense cos
+ *  - Cache-Control: els fitxers amb empremta al nom (app.3f9a1c2e.js) són immutables durant un any,
+ *    la resta es revaliden a cada ús (no-cache) i normalment es resolen amb un 304
+ *  - Compressió dels fitxers de text: es fa servir la variant precomprimida (fitxer.br / fitxer.gz) si existeix;
+ *    si no, es comprimeix amb gzip un sol cop i es guarda en memòria fins que el fitxer canvia
+ *  - La resta (imatges, fonts, ...) s'envia amb sendfile (FileChannel.transferTo), sense copiar-la a l'espai de Java
+ *
+ * Amb diverses arrels, el fitxer es busca a cada una per ordre i guanya el primer que existeix.
+ *
+ * Imatges: si hi ha el manifest de tools/ImageOptimizer.java (mvn package --> target/assets), per cada imatge
+ * s'envia la primera variant que el navegador accepta (WebP, PNG recomprimit) en lloc de l'original.
+ */
+public class StaticAssetHandler extends HttpHandler {
+    private static final Logger LOGGER = Logger.getLogger(StaticAssetHandler.class);
+
+    // Els fitxers de text més grans que això no es comprimeixen al vol (sí que es fan servir les variants precomprimides)
+    public static final int GZIP_MAX_BYTES = Integer.getInteger("static.gzipMaxBytes", 4 * 1024 * 1024);
+    // Manifest de variants d'imatges generat al build (tools/ImageOptimizer.java)
+    public static final String MANIFEST = System.getProperty("static.manifest", "target/assets/" + ImageOptimizer.MANIFEST);
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    // nom.<hash hex de 8 o més>.ext  o  nom-<hash>.ext
+    private static final Pattern FINGERPRINTED = Pattern.compile(".*[.-][0-9a-fA-F]{8,}\\.[A-Za-z0-9]+$");
+
+    private final File[] roots;
+    // Versió gzip dels fitxers de text servits, per camí canònic
+    private final Map<String, Compressed> gzipCache = new ConcurrentHashMap<>();
+    // "img/logo.png" --> variants, de la preferida a la menys preferida
+    private final Map<String, List<Variant>> variants = new HashMap<>();
+
+    public StaticAssetHandler(String... roots) {
+        this.roots = new File[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            try {
+                this.roots[i] = new File(roots[i]).getCanonicalFile();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Arrel de fitxers estàtics no vàlida: " + roots[i], e);
+            }
+        }
+    }
+
+    /**
+     * Carrega el manifest de variants. Els camins del manifest són relatius a la seva carpeta.
+     * Si no existeix (no s'ha fet mvn package), s'envien les imatges originals.
+     */
+    public StaticAssetHandler withManifest(String manifestPath) {
+        File manifest = new File(manifestPath);
+        if (!manifest.isFile()) {
+            LOGGER.info("No hi ha manifest d'imatges (" + manifest.getPath() + "): s'envien les originals");
+            return this;
+        }
+        Properties props = new Properties();
+        try (Reader in = new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8)) {
+            props.load(in);
+        } catch (IOException e) {
+            LOGGER.warn("No s'ha pogut llegir " + manifest.getPath(), e);
+            return this;
+        }
+        File dir = manifest.getAbsoluteFile().getParentFile();
+        for (String image : props.stringPropertyNames()) {
+            List<Variant> list = new ArrayList<>();
+            for (String entry : props.getProperty(image).split(",")) {
+                String[] parts = entry.trim().split("\\s+");
+                if (parts.length == 2) list.add(new Variant(parts[0], new File(dir, parts[1])));
+            }
+            variants.put(image, list);
+        }
+        LOGGER.info("Manifest d'imatges: " + variants.size() + " imatges amb variants");
+        return this;
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+        Method method = request.getMethod();
+        if (method != Method.GET && method != Method.HEAD) {
+            response.setHeader("Allow", "GET, HEAD");
+            response.sendError(405);
+            return;
+        }
+
+        String path = relativePath(request);
+        File file = path != null ? resolve(path) : null;
+        if (file == null) {
+            response.sendError(404);
+            return;
+        }
+
+        String contentType = MimeType.getByFilename(file.getName());
+        boolean text = isCompressible(file.getName(), contentType);
+
+        List<Variant> options = variants.get(path.substring(1));
+        if (options != null) {
+            Variant variant = pickVariant(options, file, contentType, request.getHeader("Accept"));
+            if (variant != null) {
+                file = variant.file;
+                contentType = variant.type;
+            }
+            response.setHeader("Vary", "Accept");
+        }
+
+        // Variant a enviar: precomprimida, comprimida al vol o l'original
+        File body = file;
+        String encoding = null;
+        if (text) {
+            String accept = request.getHeader("Accept-Encoding");
+            if (accepts(accept, "br") && isFresh(file, "br")) {
+                body = new File(file.getPath() + ".br");
+                encoding = "br";
+            } else if (accepts(accept, "gzip")) {
+                encoding = "gzip";
+                if (isFresh(file, "gz")) body = new File(file.getPath() + ".gz");
+            }
+        }
+        Compressed compressed = null;
+        if ("gzip".equals(encoding) && body == file) {
+            compressed = gzip(file);
+            if (compressed == null) encoding = null; // massa gran per comprimir-lo al vol
+        }
+
+        String etag = etag(file, encoding);
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", file.lastModified());
+        response.setHeader("Cache-Control", FINGERPRINTED.matcher(file.getName()).matches() ? IMMUTABLE : REVALIDATE);
+        if (text) response.setHeader("Vary", "Accept-Encoding");
+
+        if (notModified(request, etag, file.lastModified())) {
+            response.setStatus(304);
+            return;
+        }
+
+        response.setStatus(200);
+        if (contentType != null) response.setContentType(contentType);
+        if (encoding != null) response.setHeader("Content-Encoding", encoding);
+
+        if (compressed != null) {
+            response.setContentLength(compressed.data.length);
+            if (method == Method.GET) {
+                OutputStream out = response.getOutputStream();
+                out.write(compressed.data);
+            }
+            return;
+        }
+
+        response.setContentLengthLong(body.length());
+        if (method == Method.HEAD) return;
+        if (response.isSendFileEnabled() && !request.isSecure()) {
+            // Zero-copy: el kernel copia el fitxer directament al socket
+            response.getOutputBuffer().sendfile(body, null);
+        } else {
+            Files.copy(body.toPath(), response.getOutputStream());
+        }
+    }
+
+    // Camí de la petició respecte del context on està registrat el handler ("/" --> "/index.html")
+    private static String relativePath(Request request) throws IOException {
+        String uri = request.getDecodedRequestURI();
+        String context = request.getContextPath();
+        if (context != null && !context.isEmpty() && uri.startsWith(context)) {
+            uri = uri.substring(context.length());
+        }
+        if (uri.isEmpty() || uri.indexOf('\0') >= 0) return null;
+        if (uri.endsWith("/")) uri += "index.html";
+        return uri;
+    }
+
+    // Fitxer dins d'alguna de les arrels; null si no existeix o si el camí en surt (../)
+    private File resolve(String path) throws IOException {
+        for (File root : roots) {
+            File file = new File(root, path).getCanonicalFile();
+            if (!file.getPath().startsWith(root.getPath() + File.separator)) return null;
+            if (file.isDirectory()) file = new File(file, "index.html");
+            if (file.isFile()) return file;
+        }
+        return null;
+    }
+
+    // Primera variant acceptada i al dia; una del mateix tipus que l'original sempre s'accepta
+    private static Variant pickVariant(List<Variant> options, File original, String originalType, String accept) {
+        for (Variant variant : options) {
+            if (!variant.file.isFile() || variant.file.lastModified() < original.lastModified()) continue;
+            if (variant.type.equals(originalType) || accepts(accept, variant.type)) return variant;
+        }
+        return null;
+    }
+
+    private static boolean isCompressible(String name, String contentType) {
+        if (contentType != null && (contentType.startsWith("text/") || contentType.contains("javascript")
+                || contentType.contains("json") || contentType.contains("xml"))) {
+            return true;
+        }
+        return name.endsWith(".js") || name.endsWith(".map") || name.endsWith(".svg") || name.endsWith(".ttf");
+    }
+
+    // La capçalera (Accept-Encoding, Accept) conté el valor i no amb q=0
+    private static boolean accepts(String header, String value) {
+        if (header == null) return false;
+        for (String part : header.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (!tokens[0].trim().equalsIgnoreCase(value)) continue;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // La variant precomprimida existeix i no és més antiga que l'original
+    private static boolean isFresh(File file, String extension) {
+        File variant = new File(file.getPath() + "." + extension);
+        return variant.isFile() && variant.lastModified() >= file.lastModified();
+    }
+
+    // Cada codificació té el seu ETag: el cos enviat és diferent
+    private static String etag(File file, String encoding) {
+        StringBuilder sb = new StringBuilder("\"");
+        sb.append(Long.toHexString(file.length())).append('-').append(Long.toHexString(file.lastModified()));
+        if (encoding != null) sb.append('-').append(encoding);
+        return sb.append('"').toString();
+    }
+
+    private static boolean notModified(Request request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // Comparació feble (RFC 7232): W/"x" equival a "x"
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(etag)) return true;
+            }
+            return false;
+        }
+        long since = request.getDateHeader("If-Modified-Since");
+        // Les dates HTTP van en segons
+        return since != -1 && lastModified / 1000 <= since / 1000;
+    }
+
+    private Compressed gzip(File file) throws IOException {
+        if (file.length() > GZIP_MAX_BYTES) return null;
+        String key = file.getPath();
+        Compressed cached = gzipCache.get(key);
+        if (cached != null && cached.matches(file)) return cached;
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.max(length / 3, 512));
+        // Es comprimeix un sol cop per versió del fitxer: val la pena el nivell màxim
+        try (GZIPOutputStream gz = new GZIPOutputStream(bytes) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            Files.copy(file.toPath(), gz);
+        }
+        Compressed compressed = new Compressed(lastModified, length, bytes.toByteArray());
+        gzipCache.put(key, compressed);
+        LOGGER.debug("Comprimit " + file.getName() + ": " + length + " --> " + compressed.data.length + " bytes");
+        return compressed;
+    }
+
+    private static final class Variant {
+        final String type;
+        final File file;
+
+        Variant(String type, File file) {
+            this.type = type;
+            this.file = file;
+        }
+    }
+
+    private static final class Compressed {
+        final long lastModified;
+        final long length;
+        final byte[] data;
+
+        Compressed(long lastModified, long length, byte[] data) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.data = data;
+        }
+
+        boolean matches(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+}
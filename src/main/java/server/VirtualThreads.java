@@ -0,0 +1,48 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Mode opcional amb fils virtuals (JDK 21+): cada petició s'executa en el seu propi fil virtual.
+ *
+ * El projecte compila per Java 8, així que l'executor es crea per reflexió; en un JDK antic
+ * isSupported() és false i el servidor fa servir el pool de fils normal de Grizzly.
+ * S'activa amb -Dserver.virtualThreads=true (o amb el perfil Maven virtual-threads).
+ */
+public final class VirtualThreads {
+    public static final boolean REQUESTED = Boolean.getBoolean("server.virtualThreads");
+
+    private static final Method NEW_PER_TASK_EXECUTOR = find();
+
+    private VirtualThreads() {}
+
+    /** El JDK en què s'executa té fils virtuals. */
+    public static boolean isSupported() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /** S'ha demanat el mode i el JDK el suporta. */
+    public static boolean isEnabled() {
+        return REQUESTED && isSupported();
+    }
+
+    /** Executor que crea un fil virtual per cada tasca. */
+    public static ExecutorService newPerTaskExecutor() {
+        if (!isSupported()) throw new UnsupportedOperationException("Aquest JDK no té fils virtuals (cal el 21 o posterior)");
+        try {
+            return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No s'ha pogut crear l'executor de fils virtuals", e);
+        }
+    }
+
+    private static Method find() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package services;
+
+import org.apache.log4j.Logger;
+import services.DTOs.MessageResponse;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Valida el token d'administrador dels endpoints @AdminOnly (/auth/users, /admin/..., /metrics).
+ *
+ * El token es configura amb -Dauth.adminToken (o la variable d'entorn ADMIN_TOKEN); sense token configurat
+ * aquests endpoints responen sempre 403. Al Prometheus es posa com a bearer_token del scrape.
+ */
+@Provider
+@AdminOnly
+@Priority(Priorities.AUTHENTICATION)
+public class AdminFilter implements ContainerRequestFilter {
+    private static final Logger LOGGER = Logger.getLogger(AdminFilter.class);
+
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+    private static final String BEARER = "Bearer ";
+
+    private static final byte[] ADMIN_TOKEN = adminToken();
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        if (ADMIN_TOKEN == null) {
+            request.abortWith(error(Response.Status.FORBIDDEN, "Administración desactivada en este servidor"));
+            return;
+        }
+        String token = request.getHeaderString(TOKEN_HEADER);
+        if (token == null) {
+            String authorization = request.getHeaderString("Authorization");
+            if (authorization != null && authorization.startsWith(BEARER)) token = authorization.substring(BEARER.length()).trim();
+        }
+        // Compara sempre tots els bytes: el temps de resposta no diu quants caràcters encerta
+        if (token == null || !MessageDigest.isEqual(ADMIN_TOKEN, token.getBytes(StandardCharsets.UTF_8))) {
+            request.abortWith(error(Response.Status.UNAUTHORIZED,
+                    token == null ? "Falta el token de administrador" : "Token de administrador no válido"));
+        }
+    }
+
+    private static Response error(Response.Status status, String message) {
+        return Response.status(status)
+                .type(MediaType.APPLICATION_JSON)
+                .entity(new MessageResponse(message))
+                .build();
+    }
+
+    private static byte[] adminToken() {
+        String token = System.getProperty("auth.adminToken", System.getenv("ADMIN_TOKEN"));
+        if (token == null || token.isEmpty()) {
+            LOGGER.warn("Sense auth.adminToken: /auth/users, /admin i /metrics queden desactivats");
+            return null;
+        }
+        return token.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+package services;
+
+import db.orm.SqlTracer;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import services.DTOs.MessageResponse;
+import services.DTOs.SlowQueryEntry;
+import services.json.JsonArrayOutput;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+
+
+// Consultes per diagnosticar el servidor en producció (no les fa servir l'app Android).
+// Mostren SQL, classes i fils interns: només amb el token d'administrador (services/AdminFilter.java)
+@Api(value = "/admin", description = "Diagnóstico del servidor")
+@Path("/admin")
+@AdminOnly
+public class AdminService {
+
+    private final SqlTracer tracer;
+
+    public AdminService() {
+        this.tracer = SqlTracer.getInstance();
+    }
+
+    // endpoint SLOW QUERIES --> GET /v1/admin/slow-queries?limit=50
+    // Les últimes sentències que han passat de -Ddb.slowQueryMs (db/orm/SqlTracer.java), la més recent primer,
+    // amb el mètode del DAO que les ha llançat. La capçalera X-Slow-Queries-Total porta el total des de l'arrencada.
+    @GET
+    @Path("/slow-queries")
+    @ApiOperation(value = "Últimas consultas SQL lentas", notes = "Umbral configurable con -Ddb.slowQueryMs (por defecto 200 ms)")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "OK", response = SlowQueryEntry.class, responseContainer = "List"),
+            @ApiResponse(code = 401, message = "Falta el token de administrador o no es válido", response = MessageResponse.class),
+            @ApiResponse(code = 403, message = "Administración desactivada (sin auth.adminToken)", response = MessageResponse.class)
+    })
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSlowQueries(@QueryParam("limit") @DefaultValue("50") int limit) {
+        List<SlowQueryEntry> entries = new ArrayList<>();
+        for (SqlTracer.SlowQuery q : tracer.getRecent(limit)) {
+            entries.add(new SlowQueryEntry(q.getTimestamp(), q.getSql(), q.getBinds(), q.getRows(),
+                    q.getExecMs(), q.getMappingMs(), q.getOrigin(), q.getThread()));
+        }
+        return Response.ok(new JsonArrayOutput(entries))
+                .header("X-Slow-Queries-Total", tracer.getSlowCount())
+                .header("Cache-Control", "no-store")
+                .build();
+    }
+}
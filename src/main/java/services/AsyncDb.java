@@ -0,0 +1,181 @@
+package services;
+
+import db.DbExecutor;
+import db.DbUnavailableException;
+import manager.HashExecutor;
+import org.apache.log4j.Logger;
+import server.VirtualThreads;
+import services.DTOs.MessageResponse;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Executa la part d'un recurs que toca la BD al DbExecutor i respon per l'AsyncResponse.
+ *
+ * El fil de Grizzly queda lliure de seguida. Si la cua de BD és plena es respon 503 immediatament,
+ * i si la resposta no està a punt en TIMEOUT_MS o el pool no dona cap connexió (db.DbUnavailableException)
+ * també 503 (l'app Android ho pot reintentar). Els recursos no han d'empassar-se aquesta excepció.
+ * En mode fils virtuals (server.VirtualThreads) la feina es fa directament al fil de la petició.
+ */
+public final class AsyncDb {
+    private static final Logger LOGGER = Logger.getLogger(AsyncDb.class);
+
+    public static final long TIMEOUT_MS = Long.getLong("http.asyncTimeoutMs", 10000L);
+    private static final int RETRY_AFTER_S = 1;
+
+    // Amb fils virtuals la feina de BD es fa al mateix fil de la petició (bloquejar-lo no costa res) i el límit
+    // de peticions en curs fa el paper de la cua del DbExecutor
+    private static final Semaphore INLINE_PERMITS = new Semaphore(DbExecutor.THREADS + DbExecutor.QUEUE_SIZE);
+
+    private AsyncDb() {}
+
+    public static void run(AsyncResponse asyncResponse, Supplier<Response> work) {
+        if (VirtualThreads.isEnabled()) {
+            runInline(asyncResponse, work);
+            return;
+        }
+        asyncResponse.setTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        asyncResponse.setTimeoutHandler(ar -> ar.resume(unavailable("Temps d'espera esgotat")));
+        try {
+            DbExecutor.getInstance().submit(() -> {
+                // Si ja ha saltat el timeout mentre era a la cua, no cal fer la consulta
+                return asyncResponse.isSuspended() ? work.get() : null;
+            }).whenComplete((response, error) -> complete(asyncResponse, response, error));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Cua de BD plena, petició rebutjada (" + DbExecutor.getInstance() + ")");
+            asyncResponse.resume(unavailable("Servidor ocupat, torna-ho a provar"));
+        }
+    }
+
+    /**
+     * Com run(), però en dues parts: 'dbWork' al DbExecutor i, amb el que torni, 'hashWork' al HashExecutor
+     * (manager/HashExecutor.java). Per a feina de CPU llarga que no ha d'ocupar un fil de BD: el PBKDF2 del login.
+     */
+    public static <T> void run(AsyncResponse asyncResponse, Supplier<T> dbWork, Function<T, Response> hashWork) {
+        if (VirtualThreads.isEnabled()) {
+            runInline(asyncResponse, () -> hashWork.apply(dbWork.get()));
+            return;
+        }
+        asyncResponse.setTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        asyncResponse.setTimeoutHandler(ar -> ar.resume(unavailable("Temps d'espera esgotat")));
+        try {
+            DbExecutor.getInstance().submit(() -> asyncResponse.isSuspended() ? dbWork.get() : null)
+                    .thenCompose(result -> asyncResponse.isSuspended()
+                            ? HashExecutor.getInstance().submit(() -> hashWork.apply(result))
+                            : CompletableFuture.<Response>completedFuture(null))
+                    .whenComplete((response, error) -> complete(asyncResponse, response, error));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Cua de BD plena, petició rebutjada (" + DbExecutor.getInstance() + ")");
+            asyncResponse.resume(unavailable("Servidor ocupat, torna-ho a provar"));
+        }
+    }
+
+    /**
+     * Com run(), però en tres parts: 'dbBefore' al DbExecutor, 'hashWork' al HashExecutor i 'dbAfter' un altre cop
+     * al DbExecutor (el registre: comprovar duplicats, PBKDF2, inserir). Una RuntimeException de qualsevol part
+     * es converteix en resposta amb 'onError'; DbUnavailableException i les cues plenes continuen sent 503.
+     */
+    public static <T, U> void run(AsyncResponse asyncResponse, Supplier<T> dbBefore, Function<T, U> hashWork,
+                                  Function<U, Response> dbAfter, Function<RuntimeException, Response> onError) {
+        if (VirtualThreads.isEnabled()) {
+            runInline(asyncResponse, () -> {
+                try {
+                    return dbAfter.apply(hashWork.apply(dbBefore.get()));
+                } catch (DbUnavailableException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    return onError.apply(e);
+                }
+            });
+            return;
+        }
+        asyncResponse.setTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        asyncResponse.setTimeoutHandler(ar -> ar.resume(unavailable("Temps d'espera esgotat")));
+        try {
+            DbExecutor.getInstance().submit(() -> asyncResponse.isSuspended() ? dbBefore.get() : null)
+                    .thenCompose(result -> asyncResponse.isSuspended()
+                            ? HashExecutor.getInstance().submit(() -> hashWork.apply(result))
+                            : CompletableFuture.<U>completedFuture(null))
+                    .thenCompose(hashed -> asyncResponse.isSuspended()
+                            ? DbExecutor.getInstance().submit(() -> dbAfter.apply(hashed))
+                            : CompletableFuture.<Response>completedFuture(null))
+                    .whenComplete((response, error) -> {
+                        Throwable cause = unwrap(error);
+                        if (cause instanceof RuntimeException && !(cause instanceof DbUnavailableException)
+                                && !(cause instanceof RejectedExecutionException)) {
+                            complete(asyncResponse, onError.apply((RuntimeException) cause), null);
+                        } else {
+                            complete(asyncResponse, response, error);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Cua de BD plena, petició rebutjada (" + DbExecutor.getInstance() + ")");
+            asyncResponse.resume(unavailable("Servidor ocupat, torna-ho a provar"));
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static void complete(AsyncResponse asyncResponse, Response response, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof RejectedExecutionException) {
+            LOGGER.warn("Cua plena a mitja petició, petició rebutjada");
+            asyncResponse.resume(unavailable("Servidor ocupat, torna-ho a provar"));
+        } else if (cause instanceof DbUnavailableException) {
+            // Pool sense connexions (ja s'ha registrat a FactorySession): com la cua plena, 503 i que es reintenti
+            asyncResponse.resume(unavailable("Base de dades ocupada, torna-ho a provar"));
+        } else if (cause != null) {
+            LOGGER.error("Error no controlat en una petició asíncrona", cause);
+            asyncResponse.resume(cause);
+        } else if (response != null && !asyncResponse.resume(response)) {
+            // Ja s'havia respost (timeout): alliberem el que porti obert (p.ex. un cursor de la BD)
+            closeEntity(response);
+        }
+    }
+
+    private static void runInline(AsyncResponse asyncResponse, Supplier<Response> work) {
+        if (!INLINE_PERMITS.tryAcquire()) {
+            LOGGER.warn("Massa peticions de BD en curs, petició rebutjada");
+            asyncResponse.resume(unavailable("Servidor ocupat, torna-ho a provar"));
+            return;
+        }
+        try {
+            asyncResponse.resume(work.get());
+        } catch (DbUnavailableException e) {
+            asyncResponse.resume(unavailable("Base de dades ocupada, torna-ho a provar"));
+        } catch (RuntimeException e) {
+            LOGGER.error("Error no controlat en una petició", e);
+            asyncResponse.resume(e);
+        } finally {
+            INLINE_PERMITS.release();
+        }
+    }
+
+    static Response unavailable(String message) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_S)
+                .entity(new MessageResponse(message))
+                .build();
+    }
+
+    private static void closeEntity(Response response) {
+        Object entity = response.getEntity();
+        if (entity instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) entity).close();
+            } catch (Exception e) {
+                LOGGER.debug("Error tancant una resposta descartada", e);
+            }
+        }
+    }
+}
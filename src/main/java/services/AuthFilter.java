@@ -0,0 +1,97 @@
+package services;
+
+import manager.AuthManagerImpl;
+import services.DTOs.MessageResponse;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.ext.Provider;
+import java.security.Principal;
+
+/**
+ * Valida el token de sessió dels endpoints @Authenticated. Només es recalcula l'HMAC (manager/SessionTokens.java):
+ * cap consulta a la BD. L'ID de l'usuari queda al SecurityContext i el recurs el llegeix amb usuarioId(...).
+ */
+@Provider
+@Authenticated
+@Priority(Priorities.AUTHENTICATION)
+public class AuthFilter implements ContainerRequestFilter {
+    public static final String TOKEN_HEADER = "X-Auth-Token";
+    private static final String BEARER = "Bearer ";
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        String token = request.getHeaderString(TOKEN_HEADER);
+        if (token == null) {
+            String authorization = request.getHeaderString("Authorization");
+            if (authorization != null && authorization.startsWith(BEARER)) token = authorization.substring(BEARER.length()).trim();
+        }
+
+        int usuarioId = AuthManagerImpl.getInstance().verifyToken(token);
+        if (usuarioId <= 0) {
+            request.abortWith(Response.status(Response.Status.UNAUTHORIZED)
+                    .type(MediaType.APPLICATION_JSON)
+                    .entity(new MessageResponse(token == null ? "Falta el token de sesión" : "Token de sesión no válido o caducado"))
+                    .build());
+            return;
+        }
+        request.setSecurityContext(new UsuarioSecurityContext(usuarioId, request.getSecurityContext().isSecure()));
+    }
+
+    /** ID de l'usuari del token (només dins d'un endpoint @Authenticated). */
+    public static int usuarioId(SecurityContext securityContext) {
+        return ((UsuarioPrincipal) securityContext.getUserPrincipal()).getId();
+    }
+
+    public static final class UsuarioPrincipal implements Principal {
+        private final int id;
+
+        UsuarioPrincipal(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return String.valueOf(id);
+        }
+    }
+
+    private static final class UsuarioSecurityContext implements SecurityContext {
+        private final UsuarioPrincipal principal;
+        private final boolean secure;
+
+        UsuarioSecurityContext(int usuarioId, boolean secure) {
+            this.principal = new UsuarioPrincipal(usuarioId);
+            this.secure = secure;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return false;
+        }
+
+        @Override
+        public boolean isSecure() {
+            return secure;
+        }
+
+        @Override
+        public String getAuthenticationScheme() {
+            return "Token";
+        }
+    }
+}
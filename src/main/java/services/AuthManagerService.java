@@ -1,6 +1,7 @@
 package services;
 
 
+import db.DbUnavailableException;
 import db.orm.model.Usuario;
 import manager.AuthManagerImpl;
 import io.swagger.annotations.Api;
@@ -8,10 +9,14 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import services.DTOs.MessageResponse;
+import services.json.JsonArrayOutput;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -39,22 +44,29 @@ public class AuthManagerService {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response register(Usuario usuario) {
-        try {
-            am.register(usuario); // manager/AuthManagerImpl.java, public void register(Usuario usuario)
-
-            return Response.status(Response.Status.CREATED) // 201: public void register(Usuario usuario) no retorna res (usuari resigtrat correctament)
-                    .entity(usuario) // serialitza l'usuari registrat i l'envia a android (DTO implícit)
-                    .build();
-            // android: RegisterActivity, doRegister(): onResponse() --> response.isSuccessful()
-
-        } catch (RuntimeException e) {
-
-            return Response.status(Response.Status.BAD_REQUEST) // 400: public void register(Usuario usuario) thow exception
-                    .entity(new MessageResponse(e.getMessage())) // serialitza el missatge d'error i l'envia a android
-                    .build();
-            // android: RegisterActivity, doRegister(): onResponse() --> !response.isSuccessful()
-        }
+    public void register(Usuario usuario,
+                         @Suspended AsyncResponse asyncResponse) {
+        // Duplicats al DbExecutor, PBKDF2 al HashExecutor (manager/HashExecutor.java) i inserció al DbExecutor
+        AsyncDb.run(asyncResponse,
+                () -> {
+                    am.checkRegistration(usuario); // manager/AuthManagerImpl.java, public void checkRegistration(Usuario usuario)
+                    return usuario;
+                },
+                u -> {
+                    am.hashPassword(u);
+                    return u;
+                },
+                u -> {
+                    am.saveRegistration(u);
+                    return Response.status(Response.Status.CREATED) // 201: public void register(Usuario usuario) no retorna res (usuari resigtrat correctament)
+                            .entity(u) // serialitza l'usuari registrat i l'envia a android (DTO implícit)
+                            .build();
+                    // android: RegisterActivity, doRegister(): onResponse() --> response.isSuccessful()
+                },
+                // android: RegisterActivity, doRegister(): onResponse() --> !response.isSuccessful()
+                e -> Response.status(Response.Status.BAD_REQUEST) // 400: public void register(Usuario usuario) thow exception
+                        .entity(new MessageResponse(e.getMessage())) // serialitza el missatge d'error i l'envia a android
+                        .build());
     }
 
     // endpoint LOGIN --> android(AuthService): @POST("/v1/auth/login")
@@ -62,49 +74,102 @@ public class AuthManagerService {
     @Path("/login")
     @ApiOperation(
             value = "Iniciar sesión",
-            notes = "Verifica las credenciales del usuario y devuelve sus datos si son correctas."
+            notes = "Verifica las credenciales del usuario y devuelve sus datos si son correctas. "
+                    + "La cabecera X-Auth-Token de la respuesta es el token de sesión para /shop/me/..."
     )
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Inicio de sesión exitoso", response = Usuario.class),
+            @ApiResponse(code = 400, message = "Falta el usuario o la contraseña", response = MessageResponse.class),
             @ApiResponse(code = 401, message = "Usuario o contraseña incorrectos", response = MessageResponse.class)
     })
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response login(Usuario usuario) {
-        try {
-            Usuario u = am.login(usuario); // manager/AuthManagerImpl.java, public Usuario login(Usuario usuario)
-
-            return Response.status(Response.Status.OK) // 200: public Usuario login(Usuario usuario) retorna l'usuari si les credencials son correctes
-                    .entity(u)
-                    .build();
-            // android: LoginActivity, doLogin(): onResponse() --> response.isSuccessful()
-
-        } catch (RuntimeException e) {
-
-            return Response.status(Response.Status.UNAUTHORIZED) // 401: public Usuario login(Usuario usuario) thow exception
-                    .entity(new MessageResponse(e.getMessage())) // serialitza el missatge d'error i l'envia a android
-                    .build();
-            // android: LoginActivity, doLogin(): onResponse() --> !response.isSuccessful()
+    public void login(Usuario usuario,
+                      @Suspended AsyncResponse asyncResponse) {
+        if (usuario == null || usuario.getUsername() == null || usuario.getPassword() == null) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST) // 400: sense credencials no cal ni mirar la BD
+                    .entity(new MessageResponse("Usuario y contraseña obligatorios"))
+                    .build());
+            return;
         }
+        // Cerca de l'usuari al DbExecutor i PBKDF2 al HashExecutor (manager/HashExecutor.java)
+        AsyncDb.run(asyncResponse, () -> am.findForLogin(usuario), usuarioExistent -> {
+            try {
+                Usuario u = am.checkPassword(usuario, usuarioExistent); // manager/AuthManagerImpl.java, public Usuario checkPassword(...)
+
+                return Response.status(Response.Status.OK) // 200: public Usuario login(Usuario usuario) retorna l'usuari si les credencials son correctes
+                        .entity(u)
+                        // Token de sessió per als endpoints /v1/shop/me/... (services/AuthFilter.java)
+                        .header(AuthFilter.TOKEN_HEADER, am.issueToken(u.getId()))
+                        .build();
+                // android: LoginActivity, doLogin(): onResponse() --> response.isSuccessful()
+
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+
+                return Response.status(Response.Status.UNAUTHORIZED) // 401: public Usuario login(Usuario usuario) thow exception
+                        .entity(new MessageResponse(e.getMessage())) // serialitza el missatge d'error i l'envia a android
+                        .build();
+                // android: LoginActivity, doLogin(): onResponse() --> !response.isSuccessful()
+            }
+        });
     }
 
 
-    // COMPARAR ESTRUCTURA AMB EL GET ITEMS!!!!! PER FERLA MES CORRECTE
+    // endpoint GET USUARIOS (administració) --> GET /v1/auth/users?after=0&limit=100&fields=username,email
+    //  after  --> ID de l'últim usuari de la pàgina anterior (0 = des del principi)
+    //  limit  --> mida de la pàgina (màx. AuthManagerImpl.MAX_USERS_PAGE)
+    //  fields --> camps a retornar separats per comes (sempre hi va l'id; la contrasenya mai)
+    // Si la pàgina és plena, la capçalera X-Next-Cursor porta el valor d'after per demanar la següent
+    // Porta emails, dates de naixement i monedes de tothom: només amb el token d'administrador (services/AdminFilter.java)
     @GET
     @Path("/users")
+    @AdminOnly
     @ApiOperation(
-            value = "Obtener todos los usuarios registrados",
-            notes = "Devuelve una lista de todos los usuarios en el sistema."
+            value = "Obtener los usuarios registrados",
+            notes = "Paginado por keyset: after = id del último usuario recibido. La cabecera X-Next-Cursor indica la página siguiente."
     )
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Lista de usuarios obtenida correctamente", response = Usuario.class, responseContainer = "List"),
+            @ApiResponse(code = 400, message = "Parámetros de paginación o campos no válidos", response = MessageResponse.class),
+            @ApiResponse(code = 401, message = "Falta el token de administrador o no es válido", response = MessageResponse.class),
+            @ApiResponse(code = 403, message = "Administración desactivada (sin auth.adminToken)", response = MessageResponse.class)
     })
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUsers() {
-        List<Usuario> users = this.am.getRegisteredUsers();
-        return Response.status(Response.Status.OK)
-                .entity(users)
-                .build();
+    public void getUsers(@QueryParam("after") @DefaultValue("0") int after,
+                             @QueryParam("limit") @DefaultValue("100") int limit,
+                             @QueryParam("fields") String fields,
+                         @Suspended AsyncResponse asyncResponse) {
+        AsyncDb.run(asyncResponse, () -> {
+            List<String> requested = parseFields(fields);
+            List<Usuario> users;
+            try {
+                users = this.am.getRegisteredUsers(after, limit, requested != null ? requested.toArray(new String[0]) : null);
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+            }
+
+            if (requested != null) requested.add("id"); // l'id sempre, és el cursor
+            Response.ResponseBuilder response = Response.status(Response.Status.OK)
+                    .entity(new JsonArrayOutput(users, requested));
+            if (users.size() == limit) {
+                response.header("X-Next-Cursor", users.get(users.size() - 1).getId());
+            }
+            return response.build();
+        });
+    }
+
+    // "username, email" --> [username, email]; null si no se'n demana cap
+    private static List<String> parseFields(String fields) {
+        if (fields == null || fields.trim().isEmpty()) return null;
+        List<String> result = new ArrayList<>();
+        for (String f : fields.split(",")) {
+            if (!f.trim().isEmpty()) result.add(f.trim());
+        }
+        return result.isEmpty() ? null : result;
     }
 }
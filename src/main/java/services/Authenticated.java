@@ -0,0 +1,17 @@
+package services;
+
+import javax.ws.rs.NameBinding;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Endpoints que demanen el token de sessió del login (capçalera X-Auth-Token o Authorization: Bearer).
+ * El valida services/AuthFilter.java abans d'arribar al recurs.
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Authenticated {
+}
@@ -0,0 +1,21 @@
+package services.DTOs;
+
+import java.util.List;
+
+public class CarritoRequest {
+    private String username;
+    private List<Integer> items; // IDs dels items; un ID repetit = comprar-ne més d'un
+
+    public CarritoRequest() {} // Constructor buit obligatori
+
+    public CarritoRequest(String username, List<Integer> items) {
+        this.username = username;
+        this.items = items;
+    }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    public List<Integer> getItems() { return items; }
+    public void setItems(List<Integer> items) { this.items = items; }
+}
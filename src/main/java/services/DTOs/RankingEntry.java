@@ -0,0 +1,24 @@
+package services.DTOs;
+
+public class RankingEntry {
+    private int posicion;          // 1 = primer del ranking
+    private String username;
+    private int mejorPuntuacion;
+
+    public RankingEntry() {} // Constructor buit obligatori
+
+    public RankingEntry(int posicion, String username, int mejorPuntuacion) {
+        this.posicion = posicion;
+        this.username = username;
+        this.mejorPuntuacion = mejorPuntuacion;
+    }
+
+    public int getPosicion() { return posicion; }
+    public void setPosicion(int posicion) { this.posicion = posicion; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    public int getMejorPuntuacion() { return mejorPuntuacion; }
+    public void setMejorPuntuacion(int mejorPuntuacion) { this.mejorPuntuacion = mejorPuntuacion; }
+}
@@ -0,0 +1,55 @@
+package services.DTOs;
+
+public class SlowQueryEntry {
+    private long timestamp;        // ms epoch de quan va acabar
+    private String sql;            // sense valors: només els '?'
+    private int binds;
+    private long rows;
+    private double execMs;         // temps del driver
+    private double mappingMs;      // temps de convertir les files en objectes
+    private double totalMs;
+    private String origin;         // mètode del DAO, p.ex. UsuarioDAOImpl.streamUsuariosRanking:177
+    private String thread;
+
+    public SlowQueryEntry() {} // Constructor buit obligatori
+
+    public SlowQueryEntry(long timestamp, String sql, int binds, long rows, double execMs, double mappingMs,
+                          String origin, String thread) {
+        this.timestamp = timestamp;
+        this.sql = sql;
+        this.binds = binds;
+        this.rows = rows;
+        this.execMs = execMs;
+        this.mappingMs = mappingMs;
+        this.totalMs = execMs + mappingMs;
+        this.origin = origin;
+        this.thread = thread;
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    public String getSql() { return sql; }
+    public void setSql(String sql) { this.sql = sql; }
+
+    public int getBinds() { return binds; }
+    public void setBinds(int binds) { this.binds = binds; }
+
+    public long getRows() { return rows; }
+    public void setRows(long rows) { this.rows = rows; }
+
+    public double getExecMs() { return execMs; }
+    public void setExecMs(double execMs) { this.execMs = execMs; }
+
+    public double getMappingMs() { return mappingMs; }
+    public void setMappingMs(double mappingMs) { this.mappingMs = mappingMs; }
+
+    public double getTotalMs() { return totalMs; }
+    public void setTotalMs(double totalMs) { this.totalMs = totalMs; }
+
+    public String getOrigin() { return origin; }
+    public void setOrigin(String origin) { this.origin = origin; }
+
+    public String getThread() { return thread; }
+    public void setThread(String thread) { this.thread = thread; }
+}
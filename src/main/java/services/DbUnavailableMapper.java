@@ -0,0 +1,19 @@
+package services;
+
+import db.DbUnavailableException;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * 503 (amb Retry-After) quan el pool no dona cap connexió en un endpoint síncron, igual que fa
+ * services/AsyncDb.java amb els asíncrons. Sense això Jersey respondria un 500.
+ */
+@Provider
+public class DbUnavailableMapper implements ExceptionMapper<DbUnavailableException> {
+    @Override
+    public Response toResponse(DbUnavailableException e) {
+        return AsyncDb.unavailable("Base de dades ocupada, torna-ho a provar");
+    }
+}
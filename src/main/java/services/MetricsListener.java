@@ -0,0 +1,78 @@
+package services;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Temps de resposta de cada endpoint (http_request_seconds) i peticions per classe d'estat (http_requests_total).
+ *
+ * És un listener de Jersey i no un ContainerResponseFilter perquè l'event FINISHED arriba quan la resposta
+ * ja s'ha escrit: inclou la serialització del JSON, els streams de la BD i els endpoints asíncrons (AsyncDb).
+ */
+@Provider
+public class MetricsListener implements ApplicationEventListener {
+    private static final Endpoint UNMATCHED = new Endpoint("none", "none");
+    private static final ConcurrentHashMap<Method, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        if (!MetricsRegistry.ENABLED) return null;
+        return new RequestTimer(System.nanoTime());
+    }
+
+    private static final class RequestTimer implements RequestEventListener {
+        private final long start;
+
+        RequestTimer(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void onEvent(RequestEvent event) {
+            if (event.getType() != RequestEvent.Type.FINISHED) return;
+            ResourceMethod method = event.getUriInfo().getMatchedResourceMethod();
+            Endpoint endpoint = method == null ? UNMATCHED
+                    : ENDPOINTS.computeIfAbsent(method.getInvocable().getDefinitionMethod(),
+                            m -> new Endpoint(m.getDeclaringClass().getSimpleName(), m.getName()));
+            ContainerResponse response = event.getContainerResponse();
+            endpoint.record(System.nanoTime() - start, response != null ? response.getStatus() : 500);
+        }
+    }
+
+    private static final class Endpoint {
+        private final Histogram latency;
+        // Un comptador per 1xx..5xx, creats d'entrada: a cada petició només s'indexa l'array
+        private final Counter[] byStatus = new Counter[6];
+
+        Endpoint(String resource, String method) {
+            MetricsRegistry registry = MetricsRegistry.getInstance();
+            latency = registry.histogram("http_request_seconds", "Temps de resposta de cada endpoint, fins a escriure el cos",
+                    "resource", resource, "method", method);
+            for (int i = 1; i < byStatus.length; i++) {
+                byStatus[i] = registry.counter("http_requests_total", "Peticions per endpoint i classe d'estat HTTP",
+                        "resource", resource, "method", method, "status", i + "xx");
+            }
+        }
+
+        void record(long nanos, int status) {
+            latency.record(nanos);
+            int family = status / 100;
+            byStatus[family >= 1 && family <= 5 ? family : 5].increment();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package services;
+
+import db.orm.dao.ItemDAOImpl;
+import db.orm.dao.UsuarioCache;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import manager.LoginCache;
+import metrics.MetricsRegistry;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+
+// Mètriques per a Prometheus (scrape a /v1/metrics): temps per endpoint (MetricsListener), per mètode dels DAOs
+// (metrics/TimedProxy.java), d'obtenir connexió, de les sentències JDBC i del mapeig de files, a més dels
+// comptadors que ja portaven el pool, el DbExecutor i les caches. Només amb el token d'administrador
+// (services/AdminFilter.java): al Prometheus, bearer_token del scrape.
+@Api(value = "/metrics", description = "Métricas del servidor en formato Prometheus")
+@Path("/metrics")
+@AdminOnly
+public class MetricsService {
+    public static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    static {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        UsuarioCache usuarios = UsuarioCache.getInstance();
+        registry.counter("cache_hits_total", "Consultes resoltes des de memòria", usuarios::getHits, "cache", "usuarios");
+        registry.counter("cache_misses_total", "Consultes que han hagut d'anar a la BD", usuarios::getMisses, "cache", "usuarios");
+        ItemDAOImpl items = ItemDAOImpl.getInstance();
+        registry.counter("cache_hits_total", "Consultes resoltes des de memòria", items::getCacheHits, "cache", "catalogo");
+        registry.counter("cache_misses_total", "Consultes que han hagut d'anar a la BD", items::getCacheMisses, "cache", "catalogo");
+        LoginCache logins = LoginCache.getInstance();
+        registry.counter("cache_hits_total", "Consultes resoltes des de memòria", logins::getHits, "cache", "login");
+        registry.counter("cache_misses_total", "Consultes que han hagut d'anar a la BD", logins::getMisses, "cache", "login");
+        ResponseCache responses = ResponseCache.getInstance();
+        registry.counter("cache_hits_total", "Consultes resoltes des de memòria", responses::getHits, "cache", "respuestas");
+        registry.counter("cache_misses_total", "Consultes que han hagut d'anar a la BD", responses::getMisses, "cache", "respuestas");
+
+        registry.gauge("jvm_heap_used_bytes", "Heap ocupat", () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        registry.gauge("jvm_threads", "Fils vius de la JVM", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    private final MetricsRegistry registry;
+
+    public MetricsService() {
+        this.registry = MetricsRegistry.getInstance();
+    }
+
+    // endpoint METRICS --> GET /v1/metrics (no el fa servir l'app: és per al Prometheus)
+    @GET
+    @ApiOperation(value = "Métricas de latencia y contadores (formato de texto de Prometheus)")
+    @Produces(PROMETHEUS_TEXT)
+    public Response getMetrics() {
+        StreamingOutput body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            registry.writePrometheus(writer);
+            writer.flush();
+        };
+        return Response.ok(body).header("Cache-Control", "no-store").build();
+    }
+}
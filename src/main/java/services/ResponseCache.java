@@ -0,0 +1,139 @@
+package services;
+
+import org.apache.log4j.Logger;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Respostes JSON ja serialitzades per als endpoints que donen el mateix a tothom (catàleg, pàgines del ranking).
+ *
+ * Cada entrada va lligada a la versió de les dades d'on surt (ItemDAOImpl.getCatalogVersion, Leaderboard.getVersion):
+ * quan les dades canvien la versió també, i l'entrada deixa de valer sense haver-la d'invalidar a mà.
+ * L'ETag és la versió, així que un If-None-Match que coincideix es respon amb 304 sense serialitzar res.
+ */
+public final class ResponseCache {
+    private static final Logger LOGGER = Logger.getLogger(ResponseCache.class);
+
+    public static final int MAX_ENTRIES = Integer.getInteger("http.responseCache.maxEntries", 256);
+    private static final int MAX_RENDER_ATTEMPTS = 3;
+
+    // Les versions tornen a començar en reiniciar el servidor: sense això un ETag antic podria coincidir
+    private static final String EPOCH = Long.toHexString(System.currentTimeMillis());
+
+    private static final CacheControl REVALIDATE = CacheControl.valueOf("no-cache");
+
+    private static ResponseCache instance;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    private ResponseCache() {}
+
+    public static synchronized ResponseCache getInstance() {
+        if (instance == null) {
+            instance = new ResponseCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Resposta per 'key': 304 si el client ja té la versió actual, si no els bytes guardats o,
+     * si han canviat les dades, el que retorni 'render' (que es guarda per a les següents peticions).
+     */
+    public Response get(Request request, String key, LongSupplier version, Supplier<StreamingOutput> render) {
+        long current = version.getAsLong();
+        EntityTag etag = etag(current);
+        Response.ResponseBuilder notModifiedResponse = request.evaluatePreconditions(etag);
+        if (notModifiedResponse != null) {
+            notModified.increment();
+            return notModifiedResponse.cacheControl(REVALIDATE).build();
+        }
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == current) {
+            hits.increment();
+            return ok(entry);
+        }
+
+        misses.increment();
+        // Si les dades canvien mentre es serialitza, no sabríem de quina versió són els bytes: es torna a provar
+        for (int attempt = 0; attempt < MAX_RENDER_ATTEMPTS; attempt++) {
+            byte[] body = serialize(render.get());
+            long after = version.getAsLong();
+            if (after == current) {
+                entry = new Entry(current, version, body);
+                store(key, entry);
+                return ok(entry);
+            }
+            current = after;
+        }
+        // Les dades canvien massa sovint per guardar-les: es respon sense ETag
+        LOGGER.debug("No s'ha pogut guardar " + key + ": la versió canvia mentre es serialitza");
+        return Response.ok(serialize(render.get())).cacheControl(REVALIDATE).build();
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getNotModified() { return notModified.sum(); }
+    public int size() { return entries.size(); }
+
+    private void store(String key, Entry entry) {
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(key)) {
+            // Primer fora les entrades de versions antigues; si encara és plena, no es guarda
+            entries.values().removeIf(Entry::isStale);
+            if (entries.size() >= MAX_ENTRIES) return;
+        }
+        entries.put(key, entry);
+    }
+
+    private static Response ok(Entry entry) {
+        return Response.ok(entry.body)
+                .tag(etag(entry.version))
+                .cacheControl(REVALIDATE)
+                .build();
+    }
+
+    private static EntityTag etag(long version) {
+        return new EntityTag(EPOCH + "-" + Long.toHexString(version));
+    }
+
+    private static byte[] serialize(StreamingOutput output) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try {
+            output.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Entry {
+        final long version;
+        final LongSupplier source;
+        final byte[] body;
+
+        Entry(long version, LongSupplier source, byte[] body) {
+            this.version = version;
+            this.source = source;
+            this.body = body;
+        }
+
+        boolean isStale() {
+            return source.getAsLong() != version;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package services;
 
 
+import db.DbUnavailableException;
 import db.orm.model.Item;
 import db.orm.model.Usuario;
 
@@ -9,25 +10,38 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import services.DTOs.CarritoRequest;
 import services.DTOs.CoinsResponse;
 import services.DTOs.ItemInventario;
 import services.DTOs.MessageResponse;
+import services.DTOs.RankingEntry;
+import services.json.JsonArrayOutput;
 
 import javax.ws.rs.*;
-import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
 import java.util.List;
+import java.util.function.Supplier;
 
 
+// Els endpoints que consulten la BD són asíncrons (services/AsyncDb.java): la feina va al DbExecutor
+// i el fil de Grizzly queda lliure. Items i ranking surten de memòria i es responen directament,
+// amb el JSON ja serialitzat de services/ResponseCache.java mentre les dades no canviïn.
 @Api(value = "/shop", description = "Servicios de la tienda de items")
 @Path("/shop")
 public class ShopService {
 
     private final ShopManagerImpl shopManager;
+    private final ResponseCache responseCache;
 
     public ShopService() {
         this.shopManager = ShopManagerImpl.getInstance();
+        this.responseCache = ResponseCache.getInstance();
     }
 
 
@@ -36,19 +50,25 @@ public class ShopService {
     @Path("/items")
     @ApiOperation(value = "Obtener todos los items de la tienda")
     @ApiResponses(value = {
-            @ApiResponse(code = 200, message = "OK", response = Item.class, responseContainer = "List") //
+            @ApiResponse(code = 200, message = "OK", response = Item.class, responseContainer = "List"), //
+            @ApiResponse(code = 304, message = "El catàleg no ha canviat (If-None-Match)")
     })
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response getItems() {
-        List<Item> items = shopManager.getItemsTienda(); // manager/ShopManagerImpl.java, public List<Item> getItemsTienda()
-
-        // GenericEntity s’utilitza a la resposta REST quan vols enviar una llista (o col·lecció) d’objectes
-        GenericEntity<List<Item>> entity = new GenericEntity<List<Item>>(items) {};
-
-        return Response.status(200) // 200: public List<Item> getItemsTienda() retorna la llista d'items
-                .entity(entity)
-                .build();
+    public void getItems(@Context Request request,
+                         @Suspended AsyncResponse asyncResponse) {
+        // El JSON del catàleg es guarda ja serialitzat fins que el catàleg canvia (services/ResponseCache.java);
+        // amb If-None-Match de la versió actual es respon 304 sense cos
+        Supplier<Response> items = () -> responseCache.get(request, "items", shopManager::getCatalogVersion,
+                // manager/ShopManagerImpl.java, public List<Item> getItemsTienda()
+                () -> new JsonArrayOutput(shopManager.getItemsTienda()));
+        // Amb el catàleg a memòria es respon des del fil de Grizzly; si s'ha de llegir de la BD, al DbExecutor
+        if (shopManager.isCatalogLoaded()) {
+            asyncResponse.resume(items.get());
+        } else {
+            AsyncDb.run(asyncResponse, items);
+        }
+        // 200: retorna la llista d'items (o 304 si l'app ja la té)
         // android: ShopActivity, loadItems(): onResponse() --> response.isSuccessful()
     }
 
@@ -64,24 +84,65 @@ public class ShopService {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response buyItem(@PathParam("itemId") int itemId, String username) {
-
-        if (username != null) username = username.replace("\"", "").trim();
+    public void buyItem(@PathParam("itemId") int itemId, String body,
+                        @Suspended AsyncResponse asyncResponse) {
+
+        String username = body != null ? body.replace("\"", "").trim() : null;
+
+        AsyncDb.run(asyncResponse, () -> {
+            try {
+                shopManager.comprarItem(username, itemId); // manager/ShopManagerImpl.java, public void comprarItem(String username, int itemId)
+
+                return Response.status(200) // 200: public void comprarItem(String username, int itemId) no retorna res (compra realitzada amb èxit)
+                        .entity(new MessageResponse("Compra realitzada amb èxit")) // serialitza missatge d'èxit i l'envia a android
+                        .build();
+                // android: ShopActivity, comprarItem(): onResponse() --> response.isSuccessful()
+
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(409) // 409: public void comprarItem(String username, int itemId) thow exception
+                        .entity(new MessageResponse(e.getMessage())) // serialitza missatge d'error i l'envia a android
+                        .build();
+                // android: ShopActivity, comprarItem(): onResponse() --> !response.isSuccessful()
+            }
+        });
+    }
 
-        try {
-            shopManager.comprarItem(username, itemId); // manager/ShopManagerImpl.java, public void comprarItem(String username, int itemId)
 
-            return Response.status(200) // 200: public void comprarItem(String username, int itemId) no retorna res (compra realitzada amb èxit)
-                    .entity(new MessageResponse("Compra realitzada amb èxit")) // serialitza missatge d'èxit i l'envia a android
-                    .build();
-            // android: ShopActivity, comprarItem(): onResponse() --> response.isSuccessful()
+    // endpoint BUY CARRITO --> POST /v1/shop/buy  {"username": "pepe", "items": [1, 3, 3]}
+    // Compra tots els items en una sola transacció (un UPDATE de monedes + un batch d'INSERTs)
+    @POST
+    @Path("/buy")
+    @ApiOperation(value = "Comprar varios items", notes = "Todo o nada: si no hay monedas para el total no se compra ninguno")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Compra realitzada amb èxit", response = MessageResponse.class),
+            @ApiResponse(code = 409, message = "Error en la compra del carrito", response = MessageResponse.class)
+    })
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
 
-        } catch (RuntimeException e) {
-            return Response.status(409) // 409: public void comprarItem(String username, int itemId) thow exception
-                    .entity(new MessageResponse(e.getMessage())) // serialitza missatge d'error i l'envia a android
-                    .build();
-            // android: ShopActivity, comprarItem(): onResponse() --> !response.isSuccessful()
-        }
+    public void buyCarrito(CarritoRequest carrito,
+                           @Suspended AsyncResponse asyncResponse) {
+        AsyncDb.run(asyncResponse, () -> {
+            try {
+                if (carrito == null || carrito.getUsername() == null) {
+                    throw new RuntimeException("Falta el username");
+                }
+                shopManager.comprarCarrito(carrito.getUsername().trim(), carrito.getItems()); // manager/ShopManagerImpl.java, public void comprarCarrito(String username, List<Integer> itemIds)
+
+                return Response.status(200)
+                        .entity(new MessageResponse("Compra realitzada amb èxit"))
+                        .build();
+
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(409)
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+            }
+        });
     }
 
 
@@ -95,42 +156,75 @@ public class ShopService {
     })
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response getCoins(@PathParam("username") String username) {
-        try {
-            int monedas = shopManager.getMonedas(username); // manager/ShopManagerImpl.java, public int getMonedas(String username)
-            return Response.status(200) // 200: public int getMonedas(String username) retorna les monedes de l'usuari
-                    .entity(new CoinsResponse(monedas))
-                    .build();
-            // android: ShopActivity, loadCoins(): onResponse() --> response.isSuccessful() && response.body() != null
-
-        } catch (RuntimeException e) {
-            return Response.status(404) // 404: public int getMonedas(String username) thow exception
-                    .entity(new MessageResponse(e.getMessage()))
-                    .build();
-            // android: ShopActivity, loadCoins(): onResponse() --> !response.isSuccessful()
-        }
-
+    public void getCoins(@PathParam("username") String username,
+                         @Suspended AsyncResponse asyncResponse) {
+        AsyncDb.run(asyncResponse, () -> {
+            try {
+                int monedas = shopManager.getMonedas(username); // manager/ShopManagerImpl.java, public int getMonedas(String username)
+                return Response.status(200) // 200: public int getMonedas(String username) retorna les monedes de l'usuari
+                        .entity(new CoinsResponse(monedas))
+                        .build();
+                // android: ShopActivity, loadCoins(): onResponse() --> response.isSuccessful() && response.body() != null
+
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(404) // 404: public int getMonedas(String username) thow exception
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+                // android: ShopActivity, loadCoins(): onResponse() --> !response.isSuccessful()
+            }
+
+        });
     }
 
 
     // endpoint GET RANKING USUARIOS --> android(ShopService): @GET("/v1/shop/ranking")
+    //  ?offset=20&limit=10  --> pàgina del ranking (sense limit: tot el ranking)
+    //  ?username=pepe       --> posició d'un usuari concret
     @GET
     @Path("/ranking")
-    @ApiOperation(value = "Obtenir ranking")
+    @ApiOperation(value = "Obtenir ranking", notes = "Paginat amb offset/limit, o la posició d'un usuari amb username")
     @ApiResponses(value = {
-            @ApiResponse(code = 200, message = "OK", response = Usuario.class, responseContainer = "List")
+            @ApiResponse(code = 200, message = "OK", response = RankingEntry.class, responseContainer = "List"),
+            @ApiResponse(code = 304, message = "El ranking no ha canviat (If-None-Match)"),
+            @ApiResponse(code = 404, message = "Usuari no trobat", response = MessageResponse.class)
     })
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response getRanking() {
-        List<Usuario> ranking = shopManager.getRanking(); // manager/ShopManagerImpl.java, public List<Usuario> getRanking()
-
-        // GenericEntity s’utilitza a la resposta REST quan vols enviar una llista (o col·lecció) d’objectes
-        GenericEntity<List<Usuario>> entity = new GenericEntity<List<Usuario>>(ranking) {};
-
-        return Response.status(200) // 200: public List<Usuario> getRanking() retorna la llista d'usuaris del ranking
-                .entity(entity)
-                .build();
+    public void getRanking(@QueryParam("offset") @DefaultValue("0") int offset,
+                           @QueryParam("limit") @DefaultValue("0") int limit,
+                           @QueryParam("username") String username,
+                           @Context Request request,
+                           @Suspended AsyncResponse asyncResponse) {
+        Supplier<Response> ranking = () -> {
+            if (username != null && !username.isEmpty()) {
+                try {
+                    RankingEntry entry = shopManager.getPosicionRanking(username); // manager/ShopManagerImpl.java, public RankingEntry getPosicionRanking(String username)
+                    return Response.status(200)
+                            .entity(entry)
+                            .build();
+                } catch (DbUnavailableException e) {
+                    throw e; // services/AsyncDb.java respon 503
+                } catch (RuntimeException e) {
+                    return Response.status(404)
+                            .entity(new MessageResponse(e.getMessage()))
+                            .build();
+                }
+            }
+
+            // Cada pàgina es guarda serialitzada fins que canvia alguna puntuació (services/ResponseCache.java)
+            return responseCache.get(request, "ranking|" + offset + "|" + limit, shopManager::getRankingVersion,
+                    // manager/ShopManagerImpl.java, public List<RankingEntry> getRanking(int offset, int limit)
+                    () -> new JsonArrayOutput(shopManager.getRanking(offset, limit)));
+        };
+        // El ranking viu en memòria; només si l'arrencada no l'ha pogut carregar cal anar a la BD (al DbExecutor)
+        if (shopManager.isRankingLoaded()) {
+            asyncResponse.resume(ranking.get());
+        } else {
+            AsyncDb.run(asyncResponse, ranking);
+        }
+        // 200: retorna la pàgina del ranking (o 304 si l'app ja la té)
         // android: RankingActivity, loadRanking(): onResponse() --> response.isSuccessful() && response.body() != null
     }
 
@@ -145,21 +239,26 @@ public class ShopService {
     })
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response getPerfil(@PathParam("username") String username) {
-
-        try {
-            Usuario u = shopManager.getPerfil(username);
-            return Response.status(200) // 200: public Usuario getPerfil(String username) retorna l'usuari
-                    .entity(u)
-                    .build();
-            // android: ProfileActivity, loadUserProfile(): onResponse() --> response.isSuccessful() && response.body() != null
-
-        } catch (RuntimeException e) {
-            return Response.status(404) // 404: public Usuario getPerfil(String username) thow exception
-                    .entity(new MessageResponse(e.getMessage()))
-                    .build();
-            // android: ProfileActivity, loadUserProfile(): onResponse() --> !response.isSuccessful()
-        }
+    public void getPerfil(@PathParam("username") String username,
+                          @Suspended AsyncResponse asyncResponse) {
+        AsyncDb.run(asyncResponse, () -> {
+
+            try {
+                Usuario u = shopManager.getPerfil(username);
+                return Response.status(200) // 200: public Usuario getPerfil(String username) retorna l'usuari
+                        .entity(u)
+                        .build();
+                // android: ProfileActivity, loadUserProfile(): onResponse() --> response.isSuccessful() && response.body() != null
+
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(404) // 404: public Usuario getPerfil(String username) thow exception
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+                // android: ProfileActivity, loadUserProfile(): onResponse() --> !response.isSuccessful()
+            }
+        });
     }
 
 
@@ -173,26 +272,178 @@ public class ShopService {
     })
     @Produces(MediaType.APPLICATION_JSON)
 
-    public Response getInventario(@PathParam("username") String username) {
-
-        try{
-            List<ItemInventario> inventory = shopManager.getItemByUsuario(username); // manager/ShopManagerImpl.java,
-                                                                                     // public List<ItemInventario> getItemByUsuario(String username)
-
-            // GenericEntity s’utilitza a la resposta REST quan vols enviar una llista (o col·lecció) d’objectes
-            // En aquest cas una llista de DTOs ItemInventario
-            GenericEntity<List<ItemInventario>> entity = new GenericEntity<List<ItemInventario>>(inventory) {};
-            return Response.status(200) // 200: public List<ItemInventario> getItemByUsuario(String username) retorna la llista d'items de l'inventari de l'usuari
-                    .entity(entity)
-                    .build();
-            // android: InventoryActivity, loadInventario(): onResponse() --> response.isSuccessful()
-
-        } catch(RuntimeException e){
-            return Response.status(404) // 404: public List<ItemInventario> getItemByUsuario(String username) thow exception
-                    .entity(new MessageResponse(e.getMessage()))
-                    .build();
-            // android: InventoryActivity, loadInventario(): onResponse() --> !response.isSuccessful()
-        }
+    public void getInventario(@PathParam("username") String username,
+                              @Suspended AsyncResponse asyncResponse) {
+        AsyncDb.run(asyncResponse, () -> {
+
+            try{
+                List<ItemInventario> inventory = shopManager.getItemByUsuario(username); // manager/ShopManagerImpl.java,
+                                                                                         // public List<ItemInventario> getItemByUsuario(String username)
+
+                // La llista ja és sencera i la sessió tancada: JsonArrayOutput només la serialitza
+                return Response.status(200) // 200: retorna els items de l'inventari de l'usuari
+                        .entity(new JsonArrayOutput(inventory))
+                        .build();
+                // android: InventoryActivity, loadInventario(): onResponse() --> response.isSuccessful()
+
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(404) // 404: public List<ItemInventario> getItemByUsuario(String username) thow exception
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+                // android: InventoryActivity, loadInventario(): onResponse() --> !response.isSuccessful()
+            }
+        });
     }
-}
 
+
+    // ==========================
+    // ENDPOINTS AMB TOKEN DE SESSIÓ (capçalera X-Auth-Token del login)
+    // L'usuari surt de l'ID signat del token (services/AuthFilter.java): ni username a la URL ni consulta per trobar-lo
+    // ==========================
+
+    @POST
+    @Path("/me/buy/{itemId}")
+    @Authenticated
+    @ApiOperation(value = "Comprar un item (usuario del token)")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Compra realitzada amb èxit", response = MessageResponse.class),
+            @ApiResponse(code = 401, message = "Token no vàlid", response = MessageResponse.class),
+            @ApiResponse(code = 409, message = "Error en la compra de l'item", response = MessageResponse.class)
+    })
+    @Produces(MediaType.APPLICATION_JSON)
+
+    public void buyItemMe(@PathParam("itemId") int itemId,
+                          @Context SecurityContext securityContext,
+                          @Suspended AsyncResponse asyncResponse) {
+        int usuarioId = AuthFilter.usuarioId(securityContext);
+        AsyncDb.run(asyncResponse, () -> {
+            try {
+                shopManager.comprarItem(usuarioId, itemId); // manager/ShopManagerImpl.java, public void comprarItem(int usuarioId, int itemId)
+                return Response.status(200)
+                        .entity(new MessageResponse("Compra realitzada amb èxit"))
+                        .build();
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(409)
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+            }
+        });
+    }
+
+
+    // POST /v1/shop/me/buy  {"items": [1, 3, 3]}
+    @POST
+    @Path("/me/buy")
+    @Authenticated
+    @ApiOperation(value = "Comprar varios items (usuario del token)", notes = "Todo o nada: si no hay monedas para el total no se compra ninguno")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Compra realitzada amb èxit", response = MessageResponse.class),
+            @ApiResponse(code = 401, message = "Token no vàlid", response = MessageResponse.class),
+            @ApiResponse(code = 409, message = "Error en la compra del carrito", response = MessageResponse.class)
+    })
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+
+    public void buyCarritoMe(CarritoRequest carrito,
+                             @Context SecurityContext securityContext,
+                             @Suspended AsyncResponse asyncResponse) {
+        int usuarioId = AuthFilter.usuarioId(securityContext);
+        AsyncDb.run(asyncResponse, () -> {
+            try {
+                shopManager.comprarCarrito(usuarioId, carrito != null ? carrito.getItems() : null);
+                return Response.status(200)
+                        .entity(new MessageResponse("Compra realitzada amb èxit"))
+                        .build();
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(409)
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+            }
+        });
+    }
+
+
+    @GET
+    @Path("/me/monedas")
+    @Authenticated
+    @ApiOperation(value = "Obtenir monedes (usuari del token)")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Monedes de l'usuari", response = CoinsResponse.class),
+            @ApiResponse(code = 401, message = "Token no vàlid", response = MessageResponse.class),
+            @ApiResponse(code = 404, message = "Usuari no trobat", response = MessageResponse.class)
+    })
+    @Produces(MediaType.APPLICATION_JSON)
+
+    public void getCoinsMe(@Context SecurityContext securityContext,
+                           @Suspended AsyncResponse asyncResponse) {
+        int usuarioId = AuthFilter.usuarioId(securityContext);
+        AsyncDb.run(asyncResponse, () -> {
+            try {
+                return Response.status(200)
+                        .entity(new CoinsResponse(shopManager.getMonedas(usuarioId)))
+                        .build();
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(404)
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+            }
+        });
+    }
+
+
+    @GET
+    @Path("/me/perfil")
+    @Authenticated
+    @ApiOperation(value = "Obtenir perfil (usuari del token)")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "OK", response = Usuario.class),
+            @ApiResponse(code = 401, message = "Token no vàlid", response = MessageResponse.class),
+            @ApiResponse(code = 404, message = "Usuari no trobat", response = MessageResponse.class)
+    })
+    @Produces(MediaType.APPLICATION_JSON)
+
+    public void getPerfilMe(@Context SecurityContext securityContext,
+                            @Suspended AsyncResponse asyncResponse) {
+        int usuarioId = AuthFilter.usuarioId(securityContext);
+        AsyncDb.run(asyncResponse, () -> {
+            try {
+                return Response.status(200)
+                        .entity(shopManager.getPerfil(usuarioId))
+                        .build();
+            } catch (DbUnavailableException e) {
+                throw e; // services/AsyncDb.java respon 503
+            } catch (RuntimeException e) {
+                return Response.status(404)
+                        .entity(new MessageResponse(e.getMessage()))
+                        .build();
+            }
+        });
+    }
+
+
+    @GET
+    @Path("/me/inventario")
+    @Authenticated
+    @ApiOperation(value = "Obtenir inventari (usuari del token)")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "OK", response = ItemInventario.class, responseContainer = "List"),
+            @ApiResponse(code = 401, message = "Token no vàlid", response = MessageResponse.class)
+    })
+    @Produces(MediaType.APPLICATION_JSON)
+
+    public void getInventarioMe(@Context SecurityContext securityContext,
+                                @Suspended AsyncResponse asyncResponse) {
+        int usuarioId = AuthFilter.usuarioId(securityContext);
+        AsyncDb.run(asyncResponse, () -> Response.status(200)
+                .entity(new JsonArrayOutput(shopManager.getItemByUsuario(usuarioId)))
+                .build());
+    }
+}
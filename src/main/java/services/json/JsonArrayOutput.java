@@ -0,0 +1,77 @@
+package services.json;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Resposta JSON en forma d'array que s'escriu element a element directament al stream de Grizzly.
+ *
+ * Amb un Stream de la BD (Session.streamQuery) les files es llegeixen, es serialitzen i s'envien a mesura
+ * que arriben: la resposta comença a sortir de seguida i no hi ha ni la llista ni el JSON sencer en memòria.
+ * El Stream es tanca (i amb ell la sessió) quan s'acaba d'escriure, també si el client talla la connexió.
+ */
+public class JsonArrayOutput implements StreamingOutput, AutoCloseable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Stream<?> elements;
+    private final Set<String> fields;
+
+    public JsonArrayOutput(Stream<?> elements) {
+        this(elements, null);
+    }
+
+    public JsonArrayOutput(Iterable<?> elements) {
+        this(StreamSupport.stream(elements.spliterator(), false), null);
+    }
+
+    /** Només escriu les propietats de 'fields' de cada element (sense distingir majúscules; null = totes). */
+    public JsonArrayOutput(Iterable<?> elements, Collection<String> fields) {
+        this(StreamSupport.stream(elements.spliterator(), false), fields);
+    }
+
+    public JsonArrayOutput(Stream<?> elements, Collection<String> fields) {
+        this.elements = elements;
+        if (fields == null) {
+            this.fields = null;
+        } else {
+            this.fields = new HashSet<>();
+            for (String f : fields) this.fields.add(f.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (Stream<?> s = elements) {
+            // Sense tancar el Writer: el stream de sortida el gestiona el contenidor
+            Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+            out.write('[');
+            Iterator<?> it = s.iterator();
+            boolean first = true;
+            while (it.hasNext()) {
+                if (!first) out.write(',');
+                first = false;
+                JsonWriter.write(out, it.next(), fields);
+            }
+            out.write(']');
+            out.flush();
+        }
+    }
+
+    /** Tanca el Stream sense escriure'l (p.ex. si la resposta s'ha descartat). */
+    @Override
+    public void close() {
+        elements.close();
+    }
+}
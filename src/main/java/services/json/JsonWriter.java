@@ -0,0 +1,128 @@
+package services.json;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serialitzador JSON mínim per als DTOs i models que retorna l'API.
+ *
+ * Escriu el mateix que MOXy per aquests beans: propietats amb getter i setter, en ordre alfabètic,
+ * sense els valors null. Els getters es resolen un cop per classe i es guarden com a MethodHandles.
+ */
+public final class JsonWriter {
+    private static final Map<Class<?>, Shape> SHAPES = new ConcurrentHashMap<>();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JsonWriter() {}
+
+    /** Escriu l'objecte (un bean, un String, un número o un booleà). */
+    public static void write(Writer out, Object value) throws IOException {
+        write(out, value, null);
+    }
+
+    /**
+     * Com {@link #write(Writer, Object)} però d'un bean només escriu les propietats de 'fields'
+     * (noms en minúscules; null = totes).
+     */
+    public static void write(Writer out, Object value, Set<String> fields) throws IOException {
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof String) {
+            writeString(out, (String) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else {
+            writeBean(out, value, fields);
+        }
+    }
+
+    public static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+            out.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                case '\b': out.write("\\b"); break;
+                case '\f': out.write("\\f"); break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xF]);
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+
+    private static void writeBean(Writer out, Object bean, Set<String> fields) throws IOException {
+        Shape shape = SHAPES.computeIfAbsent(bean.getClass(), Shape::new);
+        out.write('{');
+        boolean first = true;
+        for (int i = 0; i < shape.names.length; i++) {
+            if (fields != null && !fields.contains(shape.keys[i])) continue;
+            Object v = shape.get(i, bean);
+            if (v == null) continue;
+            if (!first) out.write(',');
+            first = false;
+            out.write(shape.names[i]); // ja porta les cometes i els dos punts
+            write(out, v);
+        }
+        out.write('}');
+    }
+
+    // Propietats serialitzables d'una classe, resoltes una sola vegada
+    private static final class Shape {
+        private final String[] names;
+        private final String[] keys; // nom en minúscules, per filtrar
+        private final MethodHandle[] getters;
+
+        Shape(Class<?> type) {
+            List<String> names = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            List<MethodHandle> getters = new ArrayList<>();
+            try {
+                // Introspector ja les retorna ordenades per nom, com les escriu MOXy
+                for (PropertyDescriptor pd : Introspector.getBeanInfo(type, Object.class).getPropertyDescriptors()) {
+                    if (pd.getReadMethod() == null || pd.getWriteMethod() == null) continue;
+                    names.add('"' + pd.getName() + "\":");
+                    keys.add(pd.getName().toLowerCase(Locale.ROOT));
+                    getters.add(MethodHandles.publicLookup().unreflect(pd.getReadMethod())
+                            .asType(MethodType.methodType(Object.class, Object.class)));
+                }
+            } catch (IntrospectionException | IllegalAccessException e) {
+                throw new IllegalArgumentException("No es pot serialitzar " + type.getName(), e);
+            }
+            this.names = names.toArray(new String[0]);
+            this.keys = keys.toArray(new String[0]);
+            this.getters = getters.toArray(new MethodHandle[0]);
+        }
+
+        Object get(int i, Object bean) {
+            try {
+                return getters[i].invokeExact(bean);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Error llegint " + names[i] + " de " + bean.getClass().getName(), t);
+            }
+        }
+    }
+}
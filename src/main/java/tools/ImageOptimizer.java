@@ -0,0 +1,261 @@
+package tools;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pas de build (fase prepare-package, veure pom.xml): genera versions més lleugeres de les imatges de public/img.
+ *
+ *  - PNG: es torna a codificar sense pèrdua (sense canal alfa si totes les files són opaques, amb paleta si hi ha
+ *    256 colors o menys, i compressió màxima). Alguns fitxers .png són en realitat JPEG: aquests no es toquen.
+ *  - WebP: només si hi ha cwebp al PATH (paquet webp / libwebp). Si no, es continua sense.
+ *  - Les imatges més amples que img.maxWidth (1920 per defecte) es redueixen a aquesta amplada.
+ *
+ * Només es guarden les variants més petites que l'original. El manifest (manifest.properties a la carpeta de sortida)
+ * diu, per cada imatge, quines variants hi ha i de quin tipus; server/StaticAssetHandler.java el llegeix i tria
+ * la millor segons la capçalera Accept del navegador.
+ *
+ * Ús: java tools.ImageOptimizer <carpeta public> <carpeta de sortida>
+ */
+public class ImageOptimizer {
+    private static final Logger LOGGER = Logger.getLogger(ImageOptimizer.class);
+
+    public static final String MANIFEST = "manifest.properties";
+    public static final int MAX_WIDTH = Integer.getInteger("img.maxWidth", 1920);
+    public static final int WEBP_QUALITY = Integer.getInteger("img.webpQuality", 80);
+
+    private final File source;
+    private final File output;
+    private final boolean webp;
+
+    public ImageOptimizer(File source, File output) {
+        this.source = source;
+        this.output = output;
+        this.webp = hasCwebp();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Ús: java tools.ImageOptimizer <carpeta public> <carpeta de sortida>");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+        try {
+            new ImageOptimizer(new File(args[0]), new File(args[1])).run();
+        } finally {
+            // Buida i atura el fil del RingBufferAppender: exec:java no l'ha d'haver d'interrompre
+            LogManager.shutdown();
+        }
+    }
+
+    public void run() throws IOException {
+        File images = new File(source, "img");
+        File[] files = images.listFiles((dir, name) -> name.toLowerCase().endsWith(".png"));
+        if (files == null) {
+            LOGGER.warn("No hi ha imatges a " + images.getAbsolutePath());
+            return;
+        }
+        Arrays.sort(files);
+        if (!webp) LOGGER.info("No s'ha trobat cwebp al PATH: no es generen variants WebP");
+
+        // img/logo.png --> variants, de la preferida a la menys preferida
+        Map<String, List<String>> manifest = new TreeMap<>();
+        long before = 0, after = 0;
+        for (File file : files) {
+            String name = "img/" + file.getName();
+            List<String> variants = optimize(file, name);
+            if (!variants.isEmpty()) manifest.put(name, variants);
+
+            before += file.length();
+            after += variants.isEmpty() ? file.length() : new File(output, variants.get(0).split(" ")[1]).length();
+        }
+        writeManifest(manifest);
+        LOGGER.info("Imatges optimitzades: " + files.length + " fitxers, " + before / 1024 + " KB --> " + after / 1024
+                + " KB amb la millor variant de cada una");
+    }
+
+    // Retorna les variants ("tipus camí") que han sortit més petites que l'original
+    private List<String> optimize(File file, String name) throws IOException {
+        List<String> variants = new ArrayList<>();
+        String base = name.substring(0, name.length() - ".png".length());
+
+        if (webp) {
+            File out = new File(output, base + ".webp");
+            if (isStale(out, file)) cwebp(file, out);
+            if (out.isFile() && out.length() < file.length()) variants.add("image/webp " + base + ".webp");
+        }
+
+        // Els .png que són JPEG es queden com estan: recodificar-los en PNG els faria més grans
+        if ("png".equals(formatOf(file))) {
+            File out = new File(output, name);
+            if (isStale(out, file)) {
+                BufferedImage image = ImageIO.read(file);
+                writePng(reduce(resize(image)), out);
+            }
+            if (out.length() < file.length()) {
+                variants.add("image/png " + name);
+            } else {
+                out.delete();
+            }
+        }
+        return variants;
+    }
+
+    private static boolean isStale(File out, File source) {
+        return !out.isFile() || out.lastModified() < source.lastModified();
+    }
+
+    private static String formatOf(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            String format = readers.next().getFormatName().toLowerCase();
+            return format.equals("jpg") ? "jpeg" : format;
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image) {
+        if (image.getWidth() <= MAX_WIDTH) return image;
+        int height = (int) Math.round(image.getHeight() * (double) MAX_WIDTH / image.getWidth());
+        BufferedImage resized = new BufferedImage(MAX_WIDTH, height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(image, 0, 0, MAX_WIDTH, height, null);
+        g.dispose();
+        return resized;
+    }
+
+    // Mateixos píxels amb menys bytes: paleta si hi caben els colors, sense alfa si és tota opaca
+    private static BufferedImage reduce(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        boolean opaque = true;
+        Map<Integer, Integer> palette = new HashMap<>();
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) != 0xFF) opaque = false;
+            if (palette.size() <= 256 && !palette.containsKey(pixel)) palette.put(pixel, palette.size());
+        }
+
+        if (palette.size() <= 256) {
+            byte[] r = new byte[palette.size()], g = new byte[palette.size()], b = new byte[palette.size()], a = new byte[palette.size()];
+            for (Map.Entry<Integer, Integer> color : palette.entrySet()) {
+                int argb = color.getKey();
+                int i = color.getValue();
+                a[i] = (byte) (argb >>> 24);
+                r[i] = (byte) (argb >>> 16);
+                g[i] = (byte) (argb >>> 8);
+                b[i] = (byte) argb;
+            }
+            IndexColorModel model = opaque
+                    ? new IndexColorModel(8, palette.size(), r, g, b)
+                    : new IndexColorModel(8, palette.size(), r, g, b, a);
+            BufferedImage indexed = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, model);
+            WritableRaster raster = indexed.getRaster();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    raster.setSample(x, y, 0, palette.get(pixels[y * width + x]));
+                }
+            }
+            return indexed;
+        }
+
+        if (opaque && image.getColorModel().hasAlpha()) {
+            BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            rgb.setRGB(0, 0, width, height, pixels, 0, width);
+            return rgb;
+        }
+        return image;
+    }
+
+    private static void writePng(BufferedImage image, File out) throws IOException {
+        out.getParentFile().mkdirs();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        // El writer de PNG accepta nivell de compressió des del JDK 9; en un de més antic es queda el per defecte
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.0f); // 0 = compressió màxima (sense pèrdua igualment)
+        }
+        out.delete();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static boolean hasCwebp() {
+        try {
+            Process p = new ProcessBuilder("cwebp", "-version").redirectErrorStream(true).start();
+            return p.waitFor(10, TimeUnit.SECONDS) && p.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void cwebp(File in, File out) throws IOException {
+        out.getParentFile().mkdirs();
+        List<String> command = new ArrayList<>(Arrays.asList("cwebp", "-quiet", "-m", "6", "-q", String.valueOf(WEBP_QUALITY)));
+        BufferedImage image = ImageIO.read(in);
+        if (image != null && image.getWidth() > MAX_WIDTH) {
+            command.addAll(Arrays.asList("-resize", String.valueOf(MAX_WIDTH), "0"));
+        }
+        command.addAll(Arrays.asList(in.getPath(), "-o", out.getPath()));
+        try {
+            Process p = new ProcessBuilder(command).inheritIO().start();
+            if (!p.waitFor(2, TimeUnit.MINUTES) || p.exitValue() != 0) {
+                p.destroy();
+                out.delete();
+                LOGGER.warn("cwebp ha fallat amb " + in.getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interromput convertint " + in.getName(), e);
+        }
+    }
+
+    private void writeManifest(Map<String, List<String>> manifest) throws IOException {
+        output.mkdirs();
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(new File(output, MANIFEST)), StandardCharsets.UTF_8)) {
+            w.write("# Generat per tools.ImageOptimizer: imatge original = variants (tipus camí), de més a menys preferida\n");
+            for (Map.Entry<String, List<String>> entry : manifest.entrySet()) {
+                w.write(entry.getKey() + "=" + String.join(", ", entry.getValue()) + "\n");
+            }
+        }
+    }
+}
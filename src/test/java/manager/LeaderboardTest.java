@@ -0,0 +1,117 @@
+package manager;
+
+import db.orm.model.Usuario;
+import org.junit.Before;
+import org.junit.Test;
+import services.DTOs.RankingEntry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+// Compara la skip list (spans, nodeAt, rankOf) amb una llista ordenada després de seqüències aleatòries
+public class LeaderboardTest {
+    private static final Comparator<Map.Entry<String, Integer>> RANKING =
+            Comparator.<Map.Entry<String, Integer>>comparingInt(e -> -e.getValue()).thenComparing(Map.Entry::getKey);
+
+    private Leaderboard leaderboard;
+    private Map<String, Integer> expected;
+
+    @Before
+    public void setUp() {
+        leaderboard = Leaderboard.getInstance();
+        leaderboard.load(Stream.empty());
+        expected = new HashMap<>();
+    }
+
+    @Test
+    public void randomInsertUpdateDelete() {
+        Random random = new Random(42);
+        for (int op = 1; op <= 5000; op++) {
+            String username = "u" + random.nextInt(300);
+            if (random.nextInt(5) == 0) {
+                leaderboard.remove(username);
+                expected.remove(username);
+            } else {
+                int score = random.nextInt(50); // pocs valors: molts empats, que es desempaten pel username
+                leaderboard.update(username, score);
+                expected.put(username, score);
+            }
+            if (op % 250 == 0) assertMatches();
+        }
+        assertMatches();
+    }
+
+    @Test
+    public void loadReplacesContent() {
+        leaderboard.update("vell", 10);
+        leaderboard.load(Stream.of(usuario("a", 5), usuario("b", 7), usuario("c", 5)));
+        expected.put("a", 5);
+        expected.put("b", 7);
+        expected.put("c", 5);
+        assertMatches();
+        assertNull(leaderboard.rankOf("vell"));
+    }
+
+    @Test
+    public void updateDuringLoadIsKept() {
+        // La puntuació de "a" canvia quan la seva fila ja ha passat pel stream
+        Stream<Usuario> rows = Stream.of(usuario("a", 1), usuario("b", 2))
+                .peek(u -> { if (u.getUsername().equals("b")) leaderboard.update("a", 9); });
+        leaderboard.load(rows);
+        expected.put("a", 9);
+        expected.put("b", 2);
+        assertMatches();
+    }
+
+    @Test
+    public void pagesOutOfRange() {
+        leaderboard.update("a", 1);
+        assertEquals(0, leaderboard.top(1, 10).size());
+        assertEquals(0, leaderboard.top(5, 0).size());
+        assertEquals(1, leaderboard.top(-3, 10).size());
+    }
+
+    private void assertMatches() {
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(expected.entrySet());
+        sorted.sort(RANKING);
+
+        assertEquals(sorted.size(), leaderboard.size());
+        List<RankingEntry> all = leaderboard.top(0, 0);
+        assertEquals(sorted.size(), all.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            Map.Entry<String, Integer> e = sorted.get(i);
+            assertEntry(i + 1, e, all.get(i));
+            assertEntry(i + 1, e, leaderboard.rankOf(e.getKey()));
+        }
+
+        // Pàgines que comencen a qualsevol posició (nodeAt)
+        for (int offset = 0; offset < sorted.size(); offset += 7) {
+            List<RankingEntry> page = leaderboard.top(offset, 10);
+            assertEquals(Math.min(10, sorted.size() - offset), page.size());
+            for (int i = 0; i < page.size(); i++) {
+                assertEntry(offset + i + 1, sorted.get(offset + i), page.get(i));
+            }
+        }
+    }
+
+    private static void assertEntry(int posicion, Map.Entry<String, Integer> expected, RankingEntry actual) {
+        assertEquals(expected.getKey(), actual.getUsername());
+        assertEquals((int) expected.getValue(), actual.getMejorPuntuacion());
+        assertEquals(posicion, actual.getPosicion());
+    }
+
+    private static Usuario usuario(String username, int puntuacion) {
+        Usuario u = new Usuario();
+        u.setUsername(username);
+        u.setMejorPuntuacion(puntuacion);
+        return u;
+    }
+}
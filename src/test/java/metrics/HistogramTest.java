@@ -0,0 +1,76 @@
+package metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Matemàtica dels buckets: index() i highestValue() han de ser coherents just a les fronteres
+public class HistogramTest {
+    private static final long MAX_VALUE = (1L << 41) - 1;
+    private static final int LAST = Histogram.index(MAX_VALUE);
+
+    @Test
+    public void smallValuesAreExact() {
+        for (int v = 0; v < 16; v++) {
+            assertEquals(v, Histogram.index(v));
+            assertEquals(v, Histogram.highestValue(v));
+        }
+        assertEquals(16, Histogram.index(16));
+    }
+
+    @Test
+    public void bucketBoundariesRoundTrip() {
+        for (int i = 0; i < LAST; i++) {
+            long high = Histogram.highestValue(i);
+            assertEquals("bucket " + i, i, Histogram.index(high));
+            assertEquals("bucket " + i, i + 1, Histogram.index(high + 1));
+        }
+        assertEquals(MAX_VALUE, Histogram.highestValue(LAST));
+    }
+
+    @Test
+    public void powersOfTwo() {
+        for (int exponent = 4; exponent <= 40; exponent++) {
+            long v = 1L << exponent;
+            assertEquals(v - 1, Histogram.highestValue(Histogram.index(v) - 1));
+            assertEquals(Histogram.index(v - 1) + 1, Histogram.index(v));
+        }
+    }
+
+    @Test
+    public void relativeErrorIsBounded() {
+        for (int exponent = 4; exponent < 41; exponent++) {
+            long base = 1L << exponent;
+            for (long v : new long[]{base, base + 1, base + base / 3, 2 * base - 1}) {
+                long high = Histogram.highestValue(Histogram.index(v));
+                assertTrue(v + " --> " + high, high >= v);
+                assertTrue(v + " --> " + high, high - v <= v / 16);
+            }
+        }
+    }
+
+    @Test
+    public void quantilesAndMax() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.snapshot().quantile(0.5));
+        for (int v = 1; v <= 100; v++) h.record(v * 1000L);
+        h.record(-5); // es compta com a 0
+
+        Histogram.Snapshot s = h.snapshot();
+        assertEquals(101, s.getCount());
+        assertEquals(0, s.quantile(0));
+        long p50 = s.quantile(0.5);
+        assertTrue(p50 >= 50_000 && p50 <= 50_000 + 50_000 / 16);
+        long max = s.max();
+        assertTrue(max >= 100_000 && max <= 100_000 + 100_000 / 16);
+        assertEquals(max, s.quantile(1));
+    }
+
+    @Test
+    public void hugeValuesGoToLastBucket() {
+        Histogram h = new Histogram();
+        h.record(Long.MAX_VALUE);
+        assertEquals(MAX_VALUE, h.snapshot().max());
+    }
+}